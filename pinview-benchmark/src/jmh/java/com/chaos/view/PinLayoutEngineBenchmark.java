@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Layout and path generation cost of {@link PinLayoutEngine}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PinLayoutEngineBenchmark {
+
+    @Param({"4", "6", "16", "64", "256"})
+    public int itemCount;
+
+    @Param({"0", "1"})
+    public int viewType;
+
+    @Param({"0", "10"})
+    public int itemSpacing;
+
+    private PinLayoutEngine mEngine;
+    private final float[] mSegments = new float[PinLayoutEngine.PATH_STRIDE];
+
+    @Setup
+    public void setUp() {
+        mEngine = new PinLayoutEngine();
+        int lineWidth = 4;
+        int itemRadius = viewType == PinLayoutEngine.VIEW_TYPE_LINE ? lineWidth / 2 : 10;
+        mEngine.configure(viewType, itemCount, 96, 96, itemRadius, itemSpacing, lineWidth);
+        // allocate the tables once, the benchmarks measure the steady state
+        mEngine.layout(16, 16);
+    }
+
+    @Benchmark
+    public int measure() {
+        return mEngine.measureWidth(16, 16) + mEngine.measureHeight(16, 16);
+    }
+
+    @Benchmark
+    public void layout(Blackhole bh) {
+        mEngine.layout(16, 16);
+        bh.consume(mEngine.getItemLefts());
+        bh.consume(mEngine.getPathSegments());
+    }
+
+    @Benchmark
+    public int roundRectPath() {
+        int segments = 0;
+        for (int i = 0; i < itemCount; i++) {
+            segments += PinLayoutEngine.buildRoundRectPath(mSegments, 0, 0, 0, 96, 96, 10, 10,
+                    mEngine.getBoxCorners(i));
+        }
+        return segments;
+    }
+
+    @Benchmark
+    public void checkItemRadius() {
+        PinLayoutEngine.checkItemRadius(viewType, 96, viewType == PinLayoutEngine.VIEW_TYPE_LINE ? 2 : 10, 4);
+    }
+}
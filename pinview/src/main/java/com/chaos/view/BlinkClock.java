@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * The cursor blink shared by all the {@link PinView}s of the main thread.
+ * <p>
+ * The phase only depends on the frame time, so every cursor blinks on the same frame. A single
+ * frame callback is posted for the next toggle while at least one view is subscribed, and
+ * none at all otherwise.
+ *
+ * @author Chaos Leong
+ */
+class BlinkClock implements Choreographer.FrameCallback {
+
+    static final long BLINK = 500;
+
+    private static final long BLINK_NANOS = BLINK * 1000000L;
+    // a frame time slightly before the toggle still belongs to the next phase
+    private static final long TOLERANCE_NANOS = 2000000L;
+
+    private static BlinkClock sInstance;
+
+    interface Listener {
+        /**
+         * Called on the frame the cursors toggle.
+         */
+        void onBlink(boolean cursorVisible);
+    }
+
+    private final ArrayList<Listener> mListeners = new ArrayList<>();
+    // a copy of the listeners, they may unsubscribe while being dispatched
+    private final ArrayList<Listener> mDispatching = new ArrayList<>();
+    private boolean mScheduled;
+    private long mLastPhase = -1;
+    private int mScheduleCount;
+
+    /**
+     * Must be called on the main thread.
+     */
+    static BlinkClock getInstance() {
+        if (sInstance == null) {
+            sInstance = new BlinkClock();
+        }
+        return sInstance;
+    }
+
+    private BlinkClock() {
+    }
+
+    void subscribe(Listener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+        schedule(System.nanoTime());
+    }
+
+    void unsubscribe(Listener listener) {
+        mListeners.remove(listener);
+        if (mListeners.isEmpty() && mScheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mScheduled = false;
+        }
+    }
+
+    int getListenerCount() {
+        return mListeners.size();
+    }
+
+    /**
+     * @return the number of frame callbacks posted so far
+     */
+    int getScheduleCount() {
+        return mScheduleCount;
+    }
+
+    /**
+     * @return whether the cursors are currently shown
+     */
+    boolean isCursorVisible() {
+        return isCursorVisible(phase(System.nanoTime()));
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mScheduled = false;
+        final long phase = phase(frameTimeNanos);
+        if (phase != mLastPhase) {
+            mLastPhase = phase;
+            final boolean visible = isCursorVisible(phase);
+            mDispatching.addAll(mListeners);
+            for (int i = 0, size = mDispatching.size(); i < size; i++) {
+                mDispatching.get(i).onBlink(visible);
+            }
+            mDispatching.clear();
+        }
+        schedule(frameTimeNanos);
+    }
+
+    private void schedule(long nowNanos) {
+        if (mScheduled || mListeners.isEmpty()) {
+            return;
+        }
+        mScheduled = true;
+        mScheduleCount++;
+        final long delayNanos = BLINK_NANOS - (nowNanos + TOLERANCE_NANOS) % BLINK_NANOS;
+        // rounded up, a frame before the toggle would only have to be skipped
+        Choreographer.getInstance().postFrameCallbackDelayed(this, (delayNanos + 999999L) / 1000000L);
+    }
+
+    private static long phase(long nanos) {
+        return (nanos + TOLERANCE_NANOS) / BLINK_NANOS;
+    }
+
+    private static boolean isCursorVisible(long phase) {
+        return (phase & 1) == 0;
+    }
+}
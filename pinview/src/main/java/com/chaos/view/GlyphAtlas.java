@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+
+/**
+ * The digits, the password circle and a few mask glyphs pre-rendered into a single bitmap
+ * for one paint configuration (typeface, text size, flags and color), so that drawing a
+ * glyph is a drawBitmap instead of a trip through the font rasterizer.
+ * <p>
+ * The glyphs are rendered opaque and drawn with the alpha of the paint, the atlas is rebuilt
+ * when the paint changes or when a glyph which is not in it yet is drawn.
+ *
+ * @author Chaos Leong
+ */
+class GlyphAtlas {
+
+    // a noncharacter, never part of a text
+    private static final char CIRCLE = '\uFFFF';
+    private static final String INITIAL_KEYS = "0123456789" + CIRCLE;
+    // the digits, the circle and five more glyphs, the others fall back to drawText
+    private static final int MAX_SLOTS = 16;
+    private static final int PADDING = 1;
+
+    private final char[] mKeys = new char[MAX_SLOTS];
+    // the bounds of every glyph, relative to the text origin or to the center of the circle
+    private final int[] mBounds = new int[MAX_SLOTS * 4];
+    private int mCount;
+
+    private Bitmap mBitmap;
+    private int mSlotWidth;
+    private boolean mDirty = true;
+
+    private Typeface mTypeface;
+    private float mTextSize;
+    private int mFlags;
+    private int mColor;
+
+    // shared with the view, so that the glyphs measured here are counted and cached as well
+    private final GlyphBoundsCache mBoundsCache;
+    private final Paint mRenderPaint = new Paint();
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final char[] mChar = new char[1];
+    private final Rect mRect = new Rect();
+    private final Rect mSrc = new Rect();
+    private final RectF mDst = new RectF();
+
+    GlyphAtlas(GlyphBoundsCache boundsCache) {
+        mBoundsCache = boundsCache;
+        mCount = INITIAL_KEYS.length();
+        INITIAL_KEYS.getChars(0, mCount, mKeys, 0);
+    }
+
+    /**
+     * Draws the glyph whose text origin is (x, y).
+     *
+     * @return false if the atlas is full, the glyph has to be drawn as text
+     */
+    boolean drawGlyph(Canvas canvas, char c, float x, float y, Paint paint) {
+        return draw(canvas, c, x, y, paint);
+    }
+
+    /**
+     * Draws the password circle, a radius of half the text size, centered at (cx, cy).
+     */
+    boolean drawCircle(Canvas canvas, float cx, float cy, Paint paint) {
+        return draw(canvas, CIRCLE, cx, cy, paint);
+    }
+
+    /**
+     * Drops the bitmap if it is larger than maxBytes, it is rebuilt by the next draw.
+     */
+    void trimMemory(int maxBytes) {
+        if (mBitmap != null && mBitmap.getByteCount() > maxBytes) {
+            mBitmap = null;
+            mDirty = true;
+        }
+    }
+
+    private boolean draw(Canvas canvas, char c, float x, float y, Paint paint) {
+        validate(paint);
+        int slot = indexOf(c);
+        if (slot < 0) {
+            if (mCount == MAX_SLOTS) {
+                return false;
+            }
+            slot = mCount++;
+            mKeys[slot] = c;
+            mDirty = true;
+        }
+        if (mDirty) {
+            rebuild(paint);
+        }
+
+        final int o = slot * 4;
+        final int left = slot * mSlotWidth + PADDING;
+        mSrc.set(left, PADDING,
+                left + mBounds[o + 2] - mBounds[o], PADDING + mBounds[o + 3] - mBounds[o + 1]);
+        mDst.set(x + mBounds[o], y + mBounds[o + 1], x + mBounds[o + 2], y + mBounds[o + 3]);
+        mBitmapPaint.setAlpha(paint.getAlpha());
+        canvas.drawBitmap(mBitmap, mSrc, mDst, mBitmapPaint);
+        return true;
+    }
+
+    private void validate(Paint paint) {
+        final int color = opaque(paint.getColor());
+        if (paint.getTypeface() != mTypeface
+                || paint.getTextSize() != mTextSize
+                || paint.getFlags() != mFlags
+                || color != mColor) {
+            mTypeface = paint.getTypeface();
+            mTextSize = paint.getTextSize();
+            mFlags = paint.getFlags();
+            mColor = color;
+            mDirty = true;
+        }
+    }
+
+    private int indexOf(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        for (int i = 10; i < mCount; i++) {
+            if (mKeys[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void rebuild(Paint paint) {
+        mDirty = false;
+        final Paint render = mRenderPaint;
+        render.set(paint);
+        render.setStyle(Paint.Style.FILL);
+        render.setColor(mColor);
+
+        int maxWidth = 1;
+        int maxHeight = 1;
+        for (int i = 0; i < mCount; i++) {
+            if (mKeys[i] == CIRCLE) {
+                int radius = (int) Math.ceil(render.getTextSize() / 2);
+                mRect.set(-radius, -radius, radius, radius);
+            } else {
+                mBoundsCache.getBounds(render, mKeys[i], mRect);
+            }
+            final int o = i * 4;
+            mBounds[o] = mRect.left;
+            mBounds[o + 1] = mRect.top;
+            mBounds[o + 2] = mRect.right;
+            mBounds[o + 3] = mRect.bottom;
+            maxWidth = Math.max(maxWidth, mRect.width());
+            maxHeight = Math.max(maxHeight, mRect.height());
+        }
+
+        mSlotWidth = maxWidth + 2 * PADDING;
+        final int width = mSlotWidth * mCount;
+        final int height = maxHeight + 2 * PADDING;
+        if (mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+        }
+
+        Canvas canvas = new Canvas(mBitmap);
+        for (int i = 0; i < mCount; i++) {
+            final int o = i * 4;
+            float x = i * mSlotWidth + PADDING - mBounds[o];
+            float y = PADDING - mBounds[o + 1];
+            if (mKeys[i] == CIRCLE) {
+                canvas.drawCircle(x, y, render.getTextSize() / 2, render);
+            } else {
+                mChar[0] = mKeys[i];
+                canvas.drawText(mChar, 0, 1, x, y, render);
+            }
+        }
+    }
+
+    private static int opaque(int color) {
+        return color | 0xFF000000;
+    }
+}
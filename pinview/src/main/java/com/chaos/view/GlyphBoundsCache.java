@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.Build;
+
+/**
+ * Caches the text bounds of single glyphs for one paint configuration
+ * (typeface, text size, scale, skew, letter spacing and flags).
+ * <p>
+ * ASCII glyphs live in a direct table, the others in a small LRU table,
+ * both backed by primitive arrays so that a lookup never allocates.
+ *
+ * @author Chaos Leong
+ */
+class GlyphBoundsCache {
+
+    private static final int ASCII_SIZE = 128;
+    private static final int LRU_SIZE = 32;
+
+    private final int[] mAsciiBounds = new int[ASCII_SIZE * 4];
+    private final boolean[] mAsciiCached = new boolean[ASCII_SIZE];
+
+    private final char[] mLruKeys = new char[LRU_SIZE];
+    private final int[] mLruBounds = new int[LRU_SIZE * 4];
+    private final long[] mLruLastUse = new long[LRU_SIZE];
+    private int mLruCount;
+    private long mLruClock;
+
+    private final char[] mChar = new char[1];
+    private final Rect mMeasureRect = new Rect();
+
+    private Typeface mTypeface;
+    private float mTextSize;
+    private float mTextScaleX;
+    private float mTextSkewX;
+    private float mLetterSpacing;
+    private int mFlags;
+
+    private int mMeasureCount;
+
+    /**
+     * Gets the bounds of the glyph, measures it with the paint only on a cache miss.
+     */
+    void getBounds(Paint paint, char c, Rect out) {
+        final float letterSpacing = getLetterSpacing(paint);
+        if (paint.getTypeface() != mTypeface
+                || paint.getTextSize() != mTextSize
+                || paint.getTextScaleX() != mTextScaleX
+                || paint.getTextSkewX() != mTextSkewX
+                || letterSpacing != mLetterSpacing
+                || paint.getFlags() != mFlags) {
+            clear();
+            mTypeface = paint.getTypeface();
+            mTextSize = paint.getTextSize();
+            mTextScaleX = paint.getTextScaleX();
+            mTextSkewX = paint.getTextSkewX();
+            mLetterSpacing = letterSpacing;
+            mFlags = paint.getFlags();
+        }
+
+        if (c < ASCII_SIZE) {
+            if (!mAsciiCached[c]) {
+                measure(paint, c, mAsciiBounds, c * 4);
+                mAsciiCached[c] = true;
+            }
+            read(mAsciiBounds, c * 4, out);
+            return;
+        }
+
+        int index = indexOf(c);
+        if (index < 0) {
+            index = mLruCount < LRU_SIZE ? mLruCount++ : eldest();
+            mLruKeys[index] = c;
+            measure(paint, c, mLruBounds, index * 4);
+        }
+        mLruLastUse[index] = ++mLruClock;
+        read(mLruBounds, index * 4, out);
+    }
+
+    void clear() {
+        for (int i = 0; i < ASCII_SIZE; i++) {
+            mAsciiCached[i] = false;
+        }
+        mLruCount = 0;
+        mTypeface = null;
+        mTextSize = 0;
+        mTextScaleX = 0;
+        mTextSkewX = 0;
+        mLetterSpacing = 0;
+        mFlags = 0;
+    }
+
+    private static float getLetterSpacing(Paint paint) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return paint.getLetterSpacing();
+        }
+        return 0;
+    }
+
+    private int indexOf(char c) {
+        for (int i = 0; i < mLruCount; i++) {
+            if (mLruKeys[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int eldest() {
+        int eldest = 0;
+        for (int i = 1; i < mLruCount; i++) {
+            if (mLruLastUse[i] < mLruLastUse[eldest]) {
+                eldest = i;
+            }
+        }
+        return eldest;
+    }
+
+    /**
+     * @return the number of glyphs actually measured with a paint, i.e. the cache misses
+     */
+    int getMeasureCount() {
+        return mMeasureCount;
+    }
+
+    private void measure(Paint paint, char c, int[] table, int offset) {
+        mMeasureCount++;
+        Rect bounds = mMeasureRect;
+        mChar[0] = c;
+        paint.getTextBounds(mChar, 0, 1, bounds);
+        table[offset] = bounds.left;
+        table[offset + 1] = bounds.top;
+        table[offset + 2] = bounds.right;
+        table[offset + 3] = bounds.bottom;
+    }
+
+    private static void read(int[] table, int offset, Rect out) {
+        out.set(table[offset], table[offset + 1], table[offset + 2], table[offset + 3]);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.view.Choreographer;
+
+import java.util.Arrays;
+
+/**
+ * Runs the {@link ItemAnimator}s of the items of one {@link PinView}, at most one per item,
+ * all of them driven by a single frame callback which is only posted while an animation runs.
+ * <p>
+ * The transforms are kept in primitive arrays indexed by item, a frame only invalidates the
+ * animated items.
+ *
+ * @author Chaos Leong
+ */
+class ItemAnimationEngine implements Choreographer.FrameCallback {
+
+    /**
+     * The glyph of an item which has none, e.g. an item which is not being deleted.
+     */
+    static final char NO_GLYPH = 0;
+
+    private static final long NOT_STARTED = -1;
+
+    interface Host {
+        /**
+         * Called when the item has to be redrawn, every frame of its animation and once more
+         * when it ends.
+         *
+         * @param reach how far the item was moved by the animation, in pixels
+         */
+        void onItemAnimationFrame(int index, float reach);
+
+        /**
+         * Called when an item starts or stops being animated.
+         */
+        void onItemAnimationsChanged();
+    }
+
+    private final Host mHost;
+    private final ItemTransform mTransform = new ItemTransform();
+
+    private ItemAnimator[] mAnimators = new ItemAnimator[0];
+    private long[] mStartNanos = new long[0];
+    private char[] mGlyphs = new char[0];
+    private float[] mTranslationXs = new float[0];
+    private float[] mTranslationYs = new float[0];
+    private float[] mScales = new float[0];
+    private float[] mAlphas = new float[0];
+    private float[] mReaches = new float[0];
+    private int mActiveCount;
+
+    private boolean mScheduled;
+    private int mScheduleCount;
+    private int mStartCount;
+
+    ItemAnimationEngine(Host host) {
+        mHost = host;
+    }
+
+    /**
+     * Starts animating the item, replaces its running animation if any.
+     *
+     * @param glyph the glyph drawn while the item has no text, e.g. the deleted one
+     */
+    void start(int index, ItemAnimator animator, char glyph) {
+        ensureCapacity(index + 1);
+        mStartCount++;
+        // a replaced animation keeps its reach, the item may still be away from its place
+        if (mAnimators[index] == null) {
+            mActiveCount++;
+            mReaches[index] = 0;
+            mHost.onItemAnimationsChanged();
+        }
+        mAnimators[index] = animator;
+        mStartNanos[index] = NOT_STARTED;
+        mGlyphs[index] = glyph;
+        // the first frame may be drawn before the first callback, a delayed item waits
+        // in its initial state
+        apply(index, animator, 0f);
+        mHost.onItemAnimationFrame(index, mReaches[index]);
+        if (!mScheduled) {
+            mScheduled = true;
+            mScheduleCount++;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Jumps all the running animations to their end.
+     */
+    void endAll() {
+        for (int i = 0; i < mAnimators.length && mActiveCount > 0; i++) {
+            if (mAnimators[i] != null) {
+                end(i);
+            }
+        }
+        if (mScheduled) {
+            mScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    boolean isAnimating(int index) {
+        return index < mAnimators.length && mAnimators[index] != null;
+    }
+
+    float getTranslationX(int index) {
+        return mTranslationXs[index];
+    }
+
+    float getTranslationY(int index) {
+        return mTranslationYs[index];
+    }
+
+    float getScale(int index) {
+        return mScales[index];
+    }
+
+    float getAlpha(int index) {
+        return mAlphas[index];
+    }
+
+    /**
+     * @return the glyph given to {@link #start(int, ItemAnimator, char)}, or {@link #NO_GLYPH}
+     */
+    char getGlyph(int index) {
+        return mGlyphs[index];
+    }
+
+    /**
+     * @return the number of frame callbacks posted so far
+     */
+    int getScheduleCount() {
+        return mScheduleCount;
+    }
+
+    /**
+     * @return the number of animations started so far, replaced ones included
+     */
+    int getStartCount() {
+        return mStartCount;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mScheduled = false;
+        int remaining = mActiveCount;
+        for (int i = 0; i < mAnimators.length && remaining > 0; i++) {
+            final ItemAnimator animator = mAnimators[i];
+            if (animator == null) {
+                continue;
+            }
+            remaining--;
+            if (mStartNanos[i] == NOT_STARTED) {
+                mStartNanos[i] = frameTimeNanos;
+            }
+            final long elapsed = (frameTimeNanos - mStartNanos[i]) / 1000000L
+                    - animator.getStartDelay(i);
+            if (elapsed < 0) {
+                continue;
+            }
+            final long duration = animator.getDuration();
+            final float fraction = duration > 0 ? Math.min(1f, (float) elapsed / duration) : 1f;
+            if (fraction >= 1f) {
+                end(i);
+            } else {
+                apply(i, animator, fraction);
+                mHost.onItemAnimationFrame(i, mReaches[i]);
+            }
+        }
+        if (mActiveCount > 0) {
+            mScheduled = true;
+            mScheduleCount++;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private void apply(int index, ItemAnimator animator, float fraction) {
+        final ItemTransform transform = mTransform;
+        transform.reset();
+        animator.transform(index, fraction, transform);
+        mTranslationXs[index] = transform.getTranslationX();
+        mTranslationYs[index] = transform.getTranslationY();
+        mScales[index] = transform.getScale();
+        mAlphas[index] = transform.getAlpha();
+        mReaches[index] = Math.max(mReaches[index], Math.max(
+                Math.abs(transform.getTranslationX()), Math.abs(transform.getTranslationY())));
+    }
+
+    private void end(int index) {
+        final float reach = mReaches[index];
+        mAnimators[index] = null;
+        mGlyphs[index] = NO_GLYPH;
+        mTranslationXs[index] = 0;
+        mTranslationYs[index] = 0;
+        mScales[index] = 1f;
+        mAlphas[index] = 1f;
+        mReaches[index] = 0;
+        mActiveCount--;
+        mHost.onItemAnimationFrame(index, reach);
+        mHost.onItemAnimationsChanged();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (mAnimators.length >= capacity) {
+            return;
+        }
+        capacity = Math.max(capacity, 2 * mAnimators.length);
+        mAnimators = Arrays.copyOf(mAnimators, capacity);
+        mStartNanos = Arrays.copyOf(mStartNanos, capacity);
+        mGlyphs = Arrays.copyOf(mGlyphs, capacity);
+        mTranslationXs = Arrays.copyOf(mTranslationXs, capacity);
+        mTranslationYs = Arrays.copyOf(mTranslationYs, capacity);
+        mScales = Arrays.copyOf(mScales, capacity);
+        mAlphas = Arrays.copyOf(mAlphas, capacity);
+        mReaches = Arrays.copyOf(mReaches, capacity);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+/**
+ * Animates a single item of a {@link PinView}, see {@link ItemAnimators} for the built-in ones.
+ * <p>
+ * An animator holds no state of its own, the same instance animates several items at once,
+ * each one with its own fraction.
+ *
+ * @author Chaos Leong
+ */
+public interface ItemAnimator {
+
+    /**
+     * @return the duration of the animation of one item, in milliseconds
+     */
+    long getDuration();
+
+    /**
+     * @param index the index of the item
+     * @return the delay before the item starts, in milliseconds, lets the items be staggered
+     */
+    long getStartDelay(int index);
+
+    /**
+     * Computes the transform of an item.
+     *
+     * @param index     the index of the item
+     * @param fraction  the linear progress of the animation, from 0 to 1
+     * @param transform the transform to update, reset to the identity before every call
+     */
+    void transform(int index, float fraction, ItemTransform transform);
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+/**
+ * The built-in {@link ItemAnimator}s.
+ *
+ * @author Chaos Leong
+ */
+public final class ItemAnimators {
+
+    private static final ItemAnimator ADD = new ItemAnimator() {
+        @Override
+        public long getDuration() {
+            return 150;
+        }
+
+        @Override
+        public long getStartDelay(int index) {
+            return 0;
+        }
+
+        @Override
+        public void transform(int index, float fraction, ItemTransform transform) {
+            float value = 0.5f + 0.5f * decelerate(fraction);
+            transform.setScale(value);
+            transform.setAlpha(value);
+        }
+    };
+
+    private static final ItemAnimator DELETE = new ItemAnimator() {
+        @Override
+        public long getDuration() {
+            return 150;
+        }
+
+        @Override
+        public long getStartDelay(int index) {
+            return 0;
+        }
+
+        @Override
+        public void transform(int index, float fraction, ItemTransform transform) {
+            float value = accelerate(fraction);
+            transform.setScale(1f - 0.5f * value);
+            transform.setAlpha(1f - value);
+        }
+    };
+
+    private static final ItemAnimator SUCCESS = new ItemAnimator() {
+        @Override
+        public long getDuration() {
+            return 300;
+        }
+
+        @Override
+        public long getStartDelay(int index) {
+            return 40L * index;
+        }
+
+        @Override
+        public void transform(int index, float fraction, ItemTransform transform) {
+            transform.setScale(1f + 0.25f * (float) Math.sin(Math.PI * fraction));
+        }
+    };
+
+    private static final ItemAnimator REVEAL = new ItemAnimator() {
+        @Override
+        public long getDuration() {
+            return ADD.getDuration();
+        }
+
+        @Override
+        public long getStartDelay(int index) {
+            return 30L * index;
+        }
+
+        @Override
+        public void transform(int index, float fraction, ItemTransform transform) {
+            // hidden until its turn
+            float value = decelerate(fraction);
+            transform.setScale(0.5f + 0.5f * value);
+            transform.setAlpha(value);
+        }
+    };
+
+    private ItemAnimators() {
+    }
+
+    /**
+     * The glyph grows from half its size while fading in, the default when text is added.
+     */
+    public static ItemAnimator add() {
+        return ADD;
+    }
+
+    /**
+     * The removed glyph shrinks while fading out, the default when text is deleted.
+     */
+    public static ItemAnimator delete() {
+        return DELETE;
+    }
+
+    /**
+     * The glyphs grow in one after the other, for a whole code entered at once.
+     */
+    public static ItemAnimator reveal() {
+        return REVEAL;
+    }
+
+    /**
+     * The items shake horizontally with a decaying amplitude, to reject a code.
+     *
+     * @param amplitude the initial amplitude, in pixels
+     */
+    public static ItemAnimator shake(final float amplitude) {
+        return new ItemAnimator() {
+            @Override
+            public long getDuration() {
+                return 400;
+            }
+
+            @Override
+            public long getStartDelay(int index) {
+                return 0;
+            }
+
+            @Override
+            public void transform(int index, float fraction, ItemTransform transform) {
+                // four periods, fading out
+                double angle = 8 * Math.PI * fraction;
+                transform.setTranslationX((float) (amplitude * Math.sin(angle) * (1 - fraction)));
+            }
+        };
+    }
+
+    /**
+     * The glyphs pulse one after the other, to accept a code.
+     */
+    public static ItemAnimator success() {
+        return SUCCESS;
+    }
+
+    private static float decelerate(float fraction) {
+        return 1f - (1f - fraction) * (1f - fraction);
+    }
+
+    private static float accelerate(float fraction) {
+        return fraction * fraction;
+    }
+}
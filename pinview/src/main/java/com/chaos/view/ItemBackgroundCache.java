@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.util.Arrays;
+
+/**
+ * The rasterized item backgrounds of all the {@link PinView}s of the process, evicted
+ * least recently used first once their total size exceeds a byte budget.
+ * <p>
+ * A bitmap only depends on the background, the clipped shape of the item and the drawable
+ * state, so the items sharing a shape share a bitmap, as do the PinViews sharing a background
+ * resource.
+ *
+ * @author Chaos Leong
+ */
+class ItemBackgroundCache {
+
+    static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static final LruCache<Key, Entry> sBitmaps = new LruCache<Key, Entry>(DEFAULT_MAX_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Entry value) {
+            return value.mByteCount;
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, Key key, Entry oldValue, Entry newValue) {
+            oldValue.mBitmap = null;
+        }
+    };
+
+    private ItemBackgroundCache() {
+    }
+
+    static void setMaxBytes(int maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes <= 0");
+        }
+        sBitmaps.resize(maxBytes);
+    }
+
+    static int getMaxBytes() {
+        return sBitmaps.maxSize();
+    }
+
+    /**
+     * Evicts all the bitmaps, e.g. when the process is asked to trim its memory.
+     */
+    static void trim() {
+        sBitmaps.evictAll();
+    }
+
+    @Nullable
+    static Entry get(Key key) {
+        return sBitmaps.get(key);
+    }
+
+    /**
+     * Caches a copy of the key, a bitmap larger than the whole budget is not cached.
+     *
+     * @return the cached entry, or null if the bitmap was not cached
+     */
+    @Nullable
+    static Entry put(Key key, Bitmap bitmap) {
+        if (bitmap.getByteCount() > getMaxBytes()) {
+            return null;
+        }
+        Entry entry = new Entry(bitmap);
+        sBitmaps.put(key.copy(), entry);
+        return entry;
+    }
+
+    /**
+     * A cached bitmap. It is let go once evicted, a drawing recorded with it has to be
+     * recorded again then, or it would keep the bitmap alive.
+     */
+    static final class Entry {
+
+        private Bitmap mBitmap;
+        private final int mByteCount;
+
+        Entry(Bitmap bitmap) {
+            mBitmap = bitmap;
+            mByteCount = bitmap.getByteCount();
+        }
+
+        /**
+         * @return the bitmap, or null once evicted
+         */
+        @Nullable
+        Bitmap getBitmap() {
+            return mBitmap;
+        }
+
+        boolean isEvicted() {
+            return mBitmap == null;
+        }
+    }
+
+    /**
+     * Identifies a rasterized background, reused by the caller for the lookups so that a hit
+     * never allocates.
+     */
+    static final class Key {
+
+        private Drawable.ConstantState mBackground;
+        private int mViewType;
+        private int mWidth;
+        private int mHeight;
+        private int mRadius;
+        private int mLineWidth;
+        private int mCorners;
+        private int[] mState;
+
+        void set(Drawable.ConstantState background, int viewType, int width, int height,
+                 int radius, int lineWidth, int corners, int[] state) {
+            mBackground = background;
+            mViewType = viewType;
+            mWidth = width;
+            mHeight = height;
+            mRadius = radius;
+            mLineWidth = lineWidth;
+            mCorners = corners;
+            mState = state;
+        }
+
+        Key copy() {
+            Key key = new Key();
+            key.set(mBackground, mViewType, mWidth, mHeight, mRadius, mLineWidth, mCorners,
+                    mState.clone());
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mBackground == key.mBackground
+                    && mViewType == key.mViewType
+                    && mWidth == key.mWidth
+                    && mHeight == key.mHeight
+                    && mRadius == key.mRadius
+                    && mLineWidth == key.mLineWidth
+                    && mCorners == key.mCorners
+                    && Arrays.equals(mState, key.mState);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(mBackground);
+            result = 31 * result + mViewType;
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            result = 31 * result + mRadius;
+            result = 31 * result + mLineWidth;
+            result = 31 * result + mCorners;
+            result = 31 * result + Arrays.hashCode(mState);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+/**
+ * The transform of an animated item, computed by an {@link ItemAnimator} for every frame.
+ * <p>
+ * The translation moves the whole item, its background and its border included, the scale
+ * and the alpha only apply to its glyph.
+ *
+ * @author Chaos Leong
+ */
+public final class ItemTransform {
+
+    private float mTranslationX;
+    private float mTranslationY;
+    private float mScale;
+    private float mAlpha;
+
+    ItemTransform() {
+        reset();
+    }
+
+    void reset() {
+        mTranslationX = 0;
+        mTranslationY = 0;
+        mScale = 1f;
+        mAlpha = 1f;
+    }
+
+    public float getTranslationX() {
+        return mTranslationX;
+    }
+
+    /**
+     * Moves the item horizontally, in pixels.
+     */
+    public void setTranslationX(float translationX) {
+        mTranslationX = translationX;
+    }
+
+    public float getTranslationY() {
+        return mTranslationY;
+    }
+
+    /**
+     * Moves the item vertically, in pixels.
+     */
+    public void setTranslationY(float translationY) {
+        mTranslationY = translationY;
+    }
+
+    public float getScale() {
+        return mScale;
+    }
+
+    /**
+     * Scales the glyph around the center of the item.
+     */
+    public void setScale(float scale) {
+        mScale = scale;
+    }
+
+    public float getAlpha() {
+        return mAlpha;
+    }
+
+    /**
+     * Fades the glyph, from 0 to 1, multiplied with the alpha of the text color.
+     */
+    public void setAlpha(float alpha) {
+        mAlpha = alpha;
+    }
+}
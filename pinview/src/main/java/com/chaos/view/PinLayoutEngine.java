@@ -0,0 +1,582 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+/**
+ * The geometry of {@link PinView} without any Android dependency: measuring, the item rects
+ * and the border path segments of every item, all as primitive arrays.
+ * <p>
+ * A path is a sequence of segments of {@link #SEGMENT_SIZE} floats, {@code [op, a, b, c, d]},
+ * where op is one of {@link #OP_MOVE_TO}, {@link #OP_R_LINE_TO}, {@link #OP_R_QUAD_TO}
+ * or {@link #OP_CLOSE}, the same operations as {@code android.graphics.Path}.
+ *
+ * @author Chaos Leong
+ */
+class PinLayoutEngine {
+
+    static final int VIEW_TYPE_RECTANGLE = 0;
+    static final int VIEW_TYPE_LINE = 1;
+    static final int VIEW_TYPE_NONE = 2;
+
+    static final int OP_MOVE_TO = 0;
+    static final int OP_R_LINE_TO = 1;
+    static final int OP_R_QUAD_TO = 2;
+    static final int OP_CLOSE = 3;
+
+    static final int SEGMENT_SIZE = 5;
+    // moveTo, four corners of at most two segments, four edges and close
+    static final int MAX_SEGMENTS_PER_PATH = 14;
+    static final int PATH_STRIDE = MAX_SEGMENTS_PER_PATH * SEGMENT_SIZE;
+
+    static final int CORNER_TOP_LEFT = 1;
+    static final int CORNER_TOP_RIGHT = 1 << 1;
+    static final int CORNER_BOTTOM_RIGHT = 1 << 2;
+    static final int CORNER_BOTTOM_LEFT = 1 << 3;
+
+    private int mViewType = VIEW_TYPE_RECTANGLE;
+    private int mItemCount;
+    private int mItemWidth;
+    private int mItemHeight;
+    private int mItemRadius;
+    private int mItemSpacing;
+    private int mLineWidth;
+    // at most this many items in a row before wrapping, 0 for a single row
+    private int mMaxItemsPerRow;
+    private int mRowSpacing;
+    // the sizes of the groups of every row, the last one repeats, null for no groups
+    private int[] mGroups;
+    private int mSeparatorWidth;
+    // the left and the top of the rect of the first item
+    private float mOriginX;
+    private float mOriginY;
+
+    private float[] mItemLefts = new float[0];
+    private float[] mItemTops = new float[0];
+    private float[] mItemRights = new float[0];
+    private float[] mItemBottoms = new float[0];
+    private float[] mItemCenterXs = new float[0];
+    private float[] mItemCenterYs = new float[0];
+
+    private float[] mPathSegments = new float[0];
+    private int[] mPathSegmentCounts = new int[0];
+
+    // the left of the items, the group of every column and the first and last columns of
+    // that group, the same for all the rows
+    private float[] mColumnLefts = new float[0];
+    private int[] mColumnGroups = new int[0];
+    private int[] mGroupFirstColumns = new int[0];
+    private int[] mGroupLastColumns = new int[0];
+    // the rects between two groups, 4 floats each
+    private float[] mSeparatorRects = new float[0];
+    private int mSeparatorCount;
+
+    void configure(int viewType, int itemCount, int itemWidth, int itemHeight,
+                   int itemRadius, int itemSpacing, int lineWidth) {
+        mViewType = viewType;
+        mItemCount = Math.max(itemCount, 0);
+        mItemWidth = itemWidth;
+        mItemHeight = itemHeight;
+        mItemRadius = itemRadius;
+        mItemSpacing = itemSpacing;
+        mLineWidth = lineWidth;
+    }
+
+    /**
+     * Wraps the items in rows of at most maxItemsPerRow items, 0 keeps a single row.
+     */
+    void configureRows(int maxItemsPerRow, int rowSpacing) {
+        mMaxItemsPerRow = Math.max(maxItemsPerRow, 0);
+        mRowSpacing = rowSpacing;
+    }
+
+    /**
+     * Splits every row in groups of the given sizes, the last size repeats until the end of
+     * the row, with separatorWidth between two groups instead of the item spacing.
+     *
+     * @param groups the sizes of the groups, null or empty for no groups
+     */
+    void configureGroups(int[] groups, int separatorWidth) {
+        mGroups = groups != null && groups.length > 0 ? groups : null;
+        mSeparatorWidth = separatorWidth;
+    }
+
+    /**
+     * @return the number of items of the longest row
+     */
+    int getColumnCount() {
+        return mMaxItemsPerRow > 0 ? Math.min(mMaxItemsPerRow, mItemCount) : mItemCount;
+    }
+
+    int getRowCount() {
+        int columns = getColumnCount();
+        return columns > 0 ? (mItemCount + columns - 1) / columns : 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the radius does not fit the item for the view type
+     */
+    static void checkItemRadius(int viewType, int itemWidth, int itemRadius, int lineWidth) {
+        if (viewType == VIEW_TYPE_LINE) {
+            float halfOfLineWidth = ((float) lineWidth) / 2;
+            if (itemRadius > halfOfLineWidth) {
+                throw new IllegalArgumentException("The itemRadius can not be greater than lineWidth when viewType is line");
+            }
+        } else if (viewType == VIEW_TYPE_RECTANGLE) {
+            float halfOfItemWidth = ((float) itemWidth) / 2;
+            if (itemRadius > halfOfItemWidth) {
+                throw new IllegalArgumentException("The itemRadius can not be greater than itemWidth");
+            }
+        }
+    }
+
+    int measureWidth(int paddingStart, int paddingEnd) {
+        int columns = getColumnCount();
+        int boxesWidth = (columns - 1) * mItemSpacing + columns * mItemWidth;
+        int width = boxesWidth + paddingEnd + paddingStart;
+        if (mItemSpacing == 0) {
+            width -= (columns - 1) * mLineWidth;
+        }
+        width += (int) Math.ceil(getGroupOffset() * getGroupIndex(columns - 1));
+        return width;
+    }
+
+    /**
+     * @return the extra distance between two items of different groups
+     */
+    private float getGroupOffset() {
+        return mItemWidth + mSeparatorWidth - getItemPitch();
+    }
+
+    /**
+     * @return the group of the column, the number of separators on its left
+     */
+    private int getGroupIndex(int column) {
+        if (mGroups == null || column <= 0) {
+            return 0;
+        }
+        int group = 0;
+        int end = mGroups[0];
+        while (column >= end) {
+            group++;
+            end += Math.max(mGroups[Math.min(group, mGroups.length - 1)], 1);
+        }
+        return group;
+    }
+
+    int measureHeight(int paddingTop, int paddingBottom) {
+        int rows = Math.max(getRowCount(), 1);
+        int boxesHeight = (rows - 1) * mRowSpacing + rows * mItemHeight;
+        int height = boxesHeight + paddingTop + paddingBottom;
+        if (mRowSpacing == 0) {
+            height -= (rows - 1) * mLineWidth;
+        }
+        return height;
+    }
+
+    /**
+     * Computes the rect, the center and the border path of every item.
+     */
+    void layout(int paddingStart, int paddingTop) {
+        final int count = mItemCount;
+        if (mItemLefts.length != count) {
+            mItemLefts = new float[count];
+            mItemTops = new float[count];
+            mItemRights = new float[count];
+            mItemBottoms = new float[count];
+            mItemCenterXs = new float[count];
+            mItemCenterYs = new float[count];
+            mPathSegments = new float[count * PATH_STRIDE];
+            mPathSegmentCounts = new int[count];
+        }
+
+        float halfLineWidth = ((float) mLineWidth) / 2;
+        float start = paddingStart + halfLineWidth;
+        mOriginX = start;
+        mOriginY = paddingTop + halfLineWidth;
+        final int columns = getColumnCount();
+        layoutColumns(columns);
+        for (int i = 0; i < count; i++) {
+            float left = mColumnLefts[i % columns];
+            float right = left + mItemWidth - mLineWidth;
+            float top = mOriginY + (i / columns) * getRowPitch();
+            float bottom = top + mItemHeight - mLineWidth;
+
+            mItemLefts[i] = left;
+            mItemTops[i] = top;
+            mItemRights[i] = right;
+            mItemBottoms[i] = bottom;
+            mItemCenterXs[i] = left + Math.abs(right - left) / 2;
+            mItemCenterYs[i] = top + Math.abs(bottom - top) / 2;
+
+            if (mViewType == VIEW_TYPE_RECTANGLE) {
+                mPathSegmentCounts[i] = buildRoundRectPath(mPathSegments, i * PATH_STRIDE,
+                        left, top, right, bottom, mItemRadius, mItemRadius, getBoxCorners(i));
+            } else if (mViewType == VIEW_TYPE_LINE) {
+                mPathSegmentCounts[i] = buildRoundRectPath(mPathSegments, i * PATH_STRIDE,
+                        left - halfLineWidth, bottom - halfLineWidth,
+                        right + halfLineWidth, bottom + halfLineWidth,
+                        mItemRadius, mItemRadius, getLineCorners(i));
+            } else {
+                mPathSegmentCounts[i] = 0;
+            }
+        }
+        layoutSeparators(columns, halfLineWidth);
+    }
+
+    private void layoutColumns(int columns) {
+        if (mColumnLefts.length != columns) {
+            mColumnLefts = new float[columns];
+            mColumnGroups = new int[columns];
+            mGroupFirstColumns = new int[columns];
+            mGroupLastColumns = new int[columns];
+        }
+        final float pitch = getItemPitch();
+        final float groupOffset = getGroupOffset();
+        for (int c = 0; c < columns; c++) {
+            int group = getGroupIndex(c);
+            mColumnGroups[c] = group;
+            mColumnLefts[c] = mOriginX + c * pitch + group * groupOffset;
+            mGroupFirstColumns[c] = c > 0 && mColumnGroups[c - 1] == group
+                    ? mGroupFirstColumns[c - 1] : c;
+        }
+        for (int c = columns - 1; c >= 0; c--) {
+            mGroupLastColumns[c] = c < columns - 1 && mColumnGroups[c + 1] == mColumnGroups[c]
+                    ? mGroupLastColumns[c + 1] : c;
+        }
+    }
+
+    /**
+     * The separators fill the gap between the lines of two groups, over the height of the items.
+     */
+    private void layoutSeparators(int columns, float halfLineWidth) {
+        int separators = 0;
+        for (int i = 1; i < mItemCount; i++) {
+            int c = i % columns;
+            if (c > 0 && mColumnGroups[c] != mColumnGroups[c - 1]) {
+                separators++;
+            }
+        }
+        if (mSeparatorRects.length < separators * 4) {
+            mSeparatorRects = new float[separators * 4];
+        }
+        mSeparatorCount = separators;
+        int o = 0;
+        for (int i = 1; i < mItemCount; i++) {
+            int c = i % columns;
+            if (c > 0 && mColumnGroups[c] != mColumnGroups[c - 1]) {
+                mSeparatorRects[o] = mItemRights[i - 1] + halfLineWidth;
+                mSeparatorRects[o + 1] = mItemTops[i] - halfLineWidth;
+                mSeparatorRects[o + 2] = mItemLefts[i] - halfLineWidth;
+                mSeparatorRects[o + 3] = mItemBottoms[i] + halfLineWidth;
+                o += 4;
+            }
+        }
+    }
+
+    /**
+     * @return the distance between the lefts of two adjacent items, adjacent items share their
+     * line when there is no spacing
+     */
+    float getItemPitch() {
+        return mItemSpacing == 0 ? mItemWidth - mLineWidth : mItemWidth + mItemSpacing;
+    }
+
+    /**
+     * @return the distance between the tops of two adjacent rows, adjacent rows share their
+     * line when there is no row spacing
+     */
+    float getRowPitch() {
+        return mRowSpacing == 0 ? mItemHeight - mLineWidth : mItemHeight + mRowSpacing;
+    }
+
+    /**
+     * Finds the items whose rect, grown by outset, may intersect the given rect, in constant
+     * time from the uniform pitches of the items. With several rows the range spans from the
+     * first visible item of the first visible row to the last one of the last visible row,
+     * the items in between still have to be tested.
+     *
+     * @param out receives the first item and the end of the range, exclusive
+     */
+    void getVisibleRange(float left, float top, float right, float bottom, float outset, int[] out) {
+        final int columns = getColumnCount();
+        final int rows = getRowCount();
+        int firstColumn;
+        int lastColumn;
+        if (mGroups == null) {
+            firstColumn = firstVisible(left, outset, mOriginX, mItemWidth - mLineWidth, getItemPitch());
+            lastColumn = lastVisible(right, outset, mOriginX, getItemPitch(), columns);
+        } else {
+            // the groups break the uniform pitch, search the precomputed columns
+            firstColumn = searchColumn(left - outset - (mItemWidth - mLineWidth));
+            lastColumn = searchColumn(right + outset) - 1;
+            if (lastColumn < columns - 1 && mColumnLefts[lastColumn + 1] <= right + outset) {
+                lastColumn++;
+            }
+        }
+        int firstRow = firstVisible(top, outset, mOriginY, mItemHeight - mLineWidth, getRowPitch());
+        int lastRow = lastVisible(bottom, outset, mOriginY, getRowPitch(), rows);
+        if (firstColumn > lastColumn || firstRow > lastRow) {
+            out[0] = out[1] = 0;
+            return;
+        }
+        out[0] = Math.min(firstRow * columns + firstColumn, mItemCount);
+        out[1] = Math.max(Math.min(lastRow * columns + lastColumn + 1, mItemCount), out[0]);
+    }
+
+    /**
+     * @return the first column whose left is not less than x
+     */
+    private int searchColumn(float x) {
+        int low = 0;
+        int high = mColumnLefts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mColumnLefts[mid] < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int firstVisible(float from, float outset, float origin, float size, float pitch) {
+        if (pitch <= 0) {
+            return 0;
+        }
+        return Math.max((int) Math.ceil((from - outset - size - origin) / pitch), 0);
+    }
+
+    private static int lastVisible(float to, float outset, float origin, float pitch, int count) {
+        if (pitch <= 0) {
+            return count - 1;
+        }
+        return Math.min((int) Math.floor((to + outset - origin) / pitch), count - 1);
+    }
+
+    /**
+     * Adjacent boxes share their border, only the outer corners of a group are rounded, and of
+     * the whole block when the rows share their border too.
+     */
+    int getBoxCorners(int i) {
+        final int column = getColumnInGroup(i);
+        final int lastColumn = getLastColumnInGroup(i);
+        boolean drawRightCorner = false;
+        boolean drawLeftCorner = false;
+        if (mItemSpacing != 0 || (mGroups != null && lastColumn == 0)) {
+            // a group of a single item is a box of its own
+            drawLeftCorner = drawRightCorner = true;
+        } else {
+            if (column == 0 && column != lastColumn) {
+                drawLeftCorner = true;
+            }
+            if (column == lastColumn && column != 0) {
+                drawRightCorner = true;
+            }
+        }
+        int corners = corners(drawLeftCorner, drawRightCorner);
+        if (mRowSpacing == 0) {
+            final int columns = getColumnCount();
+            if (i >= columns) {
+                // shares its top border with the item above
+                corners &= ~(CORNER_TOP_LEFT | CORNER_TOP_RIGHT);
+            }
+            if (i + columns < mItemCount) {
+                // shares its bottom border with the item below
+                corners &= ~(CORNER_BOTTOM_LEFT | CORNER_BOTTOM_RIGHT);
+            }
+        }
+        return corners;
+    }
+
+    int getLineCorners(int i) {
+        final int column = getColumnInGroup(i);
+        final int lastColumn = getLastColumnInGroup(i);
+        boolean l, r;
+        l = r = true;
+        if (mItemSpacing == 0 && lastColumn > 0) {
+            if (column == 0) {
+                // draw only left round
+                r = false;
+            } else if (column == lastColumn) {
+                // draw only right round
+                l = false;
+            } else {
+                // draw rect
+                l = r = false;
+            }
+        }
+        return corners(l, r);
+    }
+
+    /**
+     * @return the column of the item, relative to the first column of its group
+     */
+    private int getColumnInGroup(int i) {
+        int columns = getColumnCount();
+        if (columns == 0) {
+            return 0;
+        }
+        int column = i % columns;
+        return column - mGroupFirstColumns[column];
+    }
+
+    /**
+     * @return the column of the last item of the group of the item, relative to the first
+     * column of the group, the last row may be shorter
+     */
+    private int getLastColumnInGroup(int i) {
+        int columns = getColumnCount();
+        if (columns == 0) {
+            return 0;
+        }
+        int column = i % columns;
+        int rowEnd = Math.min(i - column + columns, mItemCount);
+        int last = Math.min(mGroupLastColumns[column], rowEnd - 1 - (i - column));
+        return last - mGroupFirstColumns[column];
+    }
+
+    private static int corners(boolean l, boolean r) {
+        int corners = 0;
+        if (l) {
+            corners |= CORNER_TOP_LEFT | CORNER_BOTTOM_LEFT;
+        }
+        if (r) {
+            corners |= CORNER_TOP_RIGHT | CORNER_BOTTOM_RIGHT;
+        }
+        return corners;
+    }
+
+    /**
+     * Writes the segments of a rect whose flagged corners are rounded.
+     *
+     * @return the number of segments written
+     */
+    static int buildRoundRectPath(float[] out, int offset, float l, float t, float r, float b,
+                                  float rx, float ry, int corners) {
+        float w = r - l;
+        float h = b - t;
+
+        float lw = w - 2 * rx;// line width
+        float lh = h - 2 * ry;// line height
+
+        int o = offset;
+        o = segment(out, o, OP_MOVE_TO, l, t + ry, 0, 0);
+
+        if ((corners & CORNER_TOP_LEFT) != 0) {
+            o = segment(out, o, OP_R_QUAD_TO, 0, -ry, rx, -ry);// top-left corner
+        } else {
+            o = segment(out, o, OP_R_LINE_TO, 0, -ry, 0, 0);
+            o = segment(out, o, OP_R_LINE_TO, rx, 0, 0, 0);
+        }
+
+        o = segment(out, o, OP_R_LINE_TO, lw, 0, 0, 0);
+
+        if ((corners & CORNER_TOP_RIGHT) != 0) {
+            o = segment(out, o, OP_R_QUAD_TO, rx, 0, rx, ry);// top-right corner
+        } else {
+            o = segment(out, o, OP_R_LINE_TO, rx, 0, 0, 0);
+            o = segment(out, o, OP_R_LINE_TO, 0, ry, 0, 0);
+        }
+
+        o = segment(out, o, OP_R_LINE_TO, 0, lh, 0, 0);
+
+        if ((corners & CORNER_BOTTOM_RIGHT) != 0) {
+            o = segment(out, o, OP_R_QUAD_TO, 0, ry, -rx, ry);// bottom-right corner
+        } else {
+            o = segment(out, o, OP_R_LINE_TO, 0, ry, 0, 0);
+            o = segment(out, o, OP_R_LINE_TO, -rx, 0, 0, 0);
+        }
+
+        o = segment(out, o, OP_R_LINE_TO, -lw, 0, 0, 0);
+
+        if ((corners & CORNER_BOTTOM_LEFT) != 0) {
+            o = segment(out, o, OP_R_QUAD_TO, -rx, 0, -rx, -ry);// bottom-left corner
+        } else {
+            o = segment(out, o, OP_R_LINE_TO, -rx, 0, 0, 0);
+            o = segment(out, o, OP_R_LINE_TO, 0, -ry, 0, 0);
+        }
+
+        o = segment(out, o, OP_R_LINE_TO, 0, -lh, 0, 0);
+
+        o = segment(out, o, OP_CLOSE, 0, 0, 0, 0);
+        return (o - offset) / SEGMENT_SIZE;
+    }
+
+    private static int segment(float[] out, int o, int op, float a, float b, float c, float d) {
+        out[o] = op;
+        out[o + 1] = a;
+        out[o + 2] = b;
+        out[o + 3] = c;
+        out[o + 4] = d;
+        return o + SEGMENT_SIZE;
+    }
+
+    int getItemCount() {
+        return mItemCount;
+    }
+
+    float[] getItemLefts() {
+        return mItemLefts;
+    }
+
+    float[] getItemTops() {
+        return mItemTops;
+    }
+
+    float[] getItemRights() {
+        return mItemRights;
+    }
+
+    float[] getItemBottoms() {
+        return mItemBottoms;
+    }
+
+    float[] getItemCenterXs() {
+        return mItemCenterXs;
+    }
+
+    float[] getItemCenterYs() {
+        return mItemCenterYs;
+    }
+
+    /**
+     * @return the rects between two groups, {@code [left, top, right, bottom]} for each
+     * of the {@link #getSeparatorCount()} separators
+     */
+    float[] getSeparatorRects() {
+        return mSeparatorRects;
+    }
+
+    int getSeparatorCount() {
+        return mSeparatorCount;
+    }
+
+    /**
+     * @return the path segments of all the items, the item i starts at {@code i * PATH_STRIDE}
+     */
+    float[] getPathSegments() {
+        return mPathSegments;
+    }
+
+    /**
+     * @return the segment count of the path of every item
+     */
+    int[] getPathSegmentCounts() {
+        return mPathSegmentCounts;
+    }
+}
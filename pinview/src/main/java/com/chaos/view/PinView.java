@@ -16,15 +16,18 @@
 
 package com.chaos.view;
 
-import android.animation.ValueAnimator;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.ColorStateList;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.Picture;
 import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.RectF;
@@ -32,9 +35,14 @@ import android.graphics.Typeface;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
 import android.text.InputFilter;
+import android.text.Spanned;
 import android.text.TextPaint;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.text.method.MovementMethod;
 import android.text.method.TransformationMethod;
 import android.util.AttributeSet;
@@ -42,17 +50,25 @@ import android.view.ActionMode;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.view.animation.DecelerateInterpolator;
 import android.view.inputmethod.EditorInfo;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.DrawableRes;
+import androidx.annotation.MainThread;
 import androidx.annotation.Nullable;
 import androidx.annotation.Px;
+import androidx.annotation.WorkerThread;
 import androidx.appcompat.widget.AppCompatEditText;
 import androidx.core.content.res.ResourcesCompat;
 import androidx.core.view.ViewCompat;
 
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Provides a widget for enter PIN/OTP/password etc.
  *
@@ -63,20 +79,34 @@ public class PinView extends AppCompatEditText {
 
     private static final String TAG = "PinView";
 
-    private static final boolean DBG = false;
-
-    private static final int BLINK = 500;
-
     private static final int DEFAULT_COUNT = 4;
 
     private static final InputFilter[] NO_FILTERS = new InputFilter[0];
 
+    // delivers the results of the verifications
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private static boolean sTrimCallbacksRegistered;
+
+    // the cached bitmaps larger than this are dropped while the view is hidden
+    private static final int IDLE_MAX_BITMAP_BYTES = 64 * 1024;
+
     private static final int[] HIGHLIGHT_STATES = new int[]{
             android.R.attr.state_selected};
 
-    private static final int VIEW_TYPE_RECTANGLE = 0;
-    private static final int VIEW_TYPE_LINE = 1;
-    private static final int VIEW_TYPE_NONE = 2;
+    private static final int VIEW_TYPE_RECTANGLE = PinLayoutEngine.VIEW_TYPE_RECTANGLE;
+    private static final int VIEW_TYPE_LINE = PinLayoutEngine.VIEW_TYPE_LINE;
+    private static final int VIEW_TYPE_NONE = PinLayoutEngine.VIEW_TYPE_NONE;
+
+    // The static chrome (background and hint) of an item only depends on its variant.
+    private static final int ITEM_VARIANT_EMPTY = 0;
+    private static final int ITEM_VARIANT_FILLED = 1;
+    private static final int ITEM_VARIANT_HIGHLIGHT = 2;
+    private static final byte ITEM_VARIANT_NONE = -1;
+
+    private static final byte ITEM_STATE_UNKNOWN = 0;
+    private static final byte ITEM_STATE_NORMAL = 1;
+    private static final byte ITEM_STATE_HIGHLIGHT = 2;
 
     private int mViewType;
 
@@ -86,25 +116,149 @@ public class PinView extends AppCompatEditText {
     private int mPinItemHeight;
     private int mPinItemRadius;
     private int mPinItemSpacing;
-
-    private final Paint mPaint;
+    private int mMaxItemsPerRow;
+    private int mRowSpacing;
+    private int[] mItemGroups;
+    private int mSeparatorWidth;
+    private Drawable mSeparatorDrawable;
+
+    // One pre-configured paint per role, no paint state is toggled while drawing the items.
+    private final Paint mBorderPaint;
+    private final Paint mHighlightBorderPaint;
+    private final Paint mLineFillPaint;
+    private final Paint mHighlightLineFillPaint;
+    private final Paint mCursorPaint;
+    private final Paint mItemBackgroundPaint;
+    private final TextPaint mTextPaint = new TextPaint();
+    private final TextPaint mHintPaint = new TextPaint();
+    private final TextPaint mMaskPaint = new TextPaint();
     private final TextPaint mAnimatorTextPaint = new TextPaint();
 
     private ColorStateList mLineColor;
     private int mCurLineColor = Color.BLACK;
+    private int mHighlightLineColor = Color.BLACK;
+    private int mTextColor;
+    private int mHintTextColor;
     private int mLineWidth;
 
     private final Rect mTextRect = new Rect();
+    private final GlyphBoundsCache mGlyphBoundsCache = new GlyphBoundsCache();
+    // only while the glyph atlas mode is enabled
+    private GlyphAtlas mGlyphAtlas;
+    private final char[] mGlyph = new char[1];
+    private final Rect mClipBounds = new Rect();
+    private final Rect mDirtyRect = new Rect();
     private final RectF mItemBorderRect = new RectF();
-    private final RectF mItemLineRect = new RectF();
-    private final Path mPath = new Path();
     private final PointF mItemCenterPoint = new PointF();
 
-    private ValueAnimator mDefaultAddAnimator;
+    private final PinLayoutEngine mLayoutEngine = new PinLayoutEngine();
+
+    // Cell geometry table, indexed by item position and rebuilt only when the geometry changes.
+    private float[] mItemLefts = new float[0];
+    private float[] mItemTops = new float[0];
+    private float[] mItemRights = new float[0];
+    private float[] mItemBottoms = new float[0];
+    private float[] mItemCenterXs = new float[0];
+    private float[] mItemCenterYs = new float[0];
+    private boolean mItemGeometryDirty = true;
+
+    // Cached border paths, one stable instance per cell, rebuilt together with the geometry table.
+    private Path[] mItemBoxPaths = new Path[0];
+    private Path[] mItemLinePaths = new Path[0];
+
+    // The borders of all the items drawn with the line color, merged into a single path.
+    private final Path mBorderBatchPath = new Path();
+    private boolean mBorderBatchDirty = true;
+    private int mBorderBatchHighlight;
+    private int mBorderBatchHidden;
+    private int mBorderBatchFirst;
+    private int mBorderBatchEnd;
+
+    // The items wider than the view are scrolled to keep the item of the cursor visible.
+    private int mItemScrollX;
+    private int mContentWidth;
+    private int mContentHeight;
+    private final int[] mVisibleRange = new int[2];
+
+    // Recorded static chrome, one per item in the variant it was last drawn with, replayed
+    // while only the glyphs, the borders and the cursor are drawn every frame.
+    private Picture[] mItemPictures = new Picture[0];
+    private byte[] mItemPictureVariants = new byte[0];
+    private CharSequence mPicturesHint;
+    private Drawable mPicturesItemBackground;
+    // the cached background each picture was recorded with, to record it again once evicted
+    private ItemBackgroundCache.Entry[] mItemPictureBackgrounds = new ItemBackgroundCache.Entry[0];
+    private ItemBackgroundCache.Entry mDrawnItemBackground;
+    private boolean isRecordingUncached;
+
+    // At most one animation per item, all driven by a single frame callback.
+    private final ItemAnimationEngine mItemAnimations = new ItemAnimationEngine(
+            new ItemAnimationEngine.Host() {
+                @Override
+                public void onItemAnimationFrame(int index, float reach) {
+                    invalidateAnimatedItem(index, reach);
+                }
+
+                @Override
+                public void onItemAnimationsChanged() {
+                    // the animated items are drawn out of the border batch
+                    mBorderBatchDirty = true;
+                }
+            });
+    private ItemAnimator mItemAddAnimator = ItemAnimators.add();
+    private ItemAnimator mItemDeleteAnimator = ItemAnimators.delete();
     private boolean isAnimationEnable = false;
+    // while setCode replaces the whole text at once
+    private boolean isSettingCode;
+
+    // The completed code, notified once, and its verification. The generation is bumped by every
+    // text change, a verification of an older generation is stale.
+    private final TextWatcher mCompletionWatcher = new TextWatcher() {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            onCodeChanged(s);
+        }
+    };
+    private OnPinCompleteListener mOnPinCompleteListener;
+    private PinVerifier mPinVerifier;
+    private Executor mPinVerifierExecutor;
+    private OnPinVerifiedListener mOnPinVerifiedListener;
+    private String mCompletedCode;
+    private final AtomicInteger mVerificationGeneration = new AtomicInteger();
+    private Future<?> mVerification;
+    // the code whose result is due, and the one to verify again once attached
+    private String mVerifyingCode;
+    private String mInterruptedCode;
     private boolean isPasswordHidden;
 
-    private Blink mBlink;
+    // Retained content display list, lets a cursor blink skip re-recording the items.
+    private RenderNodeLayer mContentLayer;
+
+    private final BlinkClock.Listener mBlinkListener = new BlinkClock.Listener() {
+        @Override
+        public void onBlink(boolean cursorVisible) {
+            invalidateCursor(cursorVisible);
+        }
+    };
+    private boolean isBlinking;
+
+    // Idle while the view cannot be seen or has no window focus: no blink. No animation
+    // either while it cannot be seen. Not initialized, the super constructor may already
+    // read them.
+    private boolean isActive;
+    private boolean isVisible;
+    private boolean isScreenOn = true;
+    private boolean isWindowFocused;
+    private boolean isVisibleAggregated = true;
+    private boolean isMemoryTrimmed;
     private boolean isCursorVisible;
     private boolean drawCursor;
     private float mCursorHeight;
@@ -113,10 +267,36 @@ public class PinView extends AppCompatEditText {
 
     private int mItemBackgroundResource;
     private Drawable mItemBackground;
+    // Every item owns a mutated copy of the item background, its bounds are set on layout
+    // and its state only when the highlight of that item changes.
+    private Drawable[] mItemBackgrounds = new Drawable[0];
+    private byte[] mItemBackgroundStates = new byte[0];
+    private Drawable mItemBackgroundsSource;
+    private boolean mItemBackgroundsDirty = true;
+    private boolean isItemBackgroundCacheEnabled;
+    private final ItemBackgroundCache.Key mItemBackgroundKey = new ItemBackgroundCache.Key();
 
     private boolean mHideLineWhenFilled;
 
-    private String mTransformed;
+    private RenderMetricsListener mRenderMetricsListener;
+    private final RenderMetrics mRenderMetrics = new RenderMetrics();
+    private boolean isDebugOverlayEnabled;
+    private Paint mDebugPaint;
+    private StringBuilder mDebugText;
+    // only while a listener or the overlay needs them, a single branch otherwise
+    private boolean isMeasuring;
+    private int mInvalidationReasons;
+    private int mFrameCellsDrawn;
+    private int mFramePathRebuilds;
+    private int mFrameClipOperations;
+
+    // Snapshot of the transformed text, reused across keystrokes. These fields are assigned
+    // from the super constructor, so they must not have initializers.
+    private char[] mTransformed;
+    private int mTransformedLength;
+    private TransformationMethod mTransformationMethod;
+    private CharSequence mTransformationSource;
+    private CharSequence mTransformationResult;
 
     public PinView(Context context) {
         this(context, null);
@@ -131,10 +311,19 @@ public class PinView extends AppCompatEditText {
 
         final Resources res = getResources();
 
-        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mPaint.setStyle(Paint.Style.STROKE);
+        mBorderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mBorderPaint.setStyle(Paint.Style.STROKE);
+        mHighlightBorderPaint = new Paint(mBorderPaint);
+
+        mLineFillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mLineFillPaint.setStyle(Paint.Style.FILL);
+        mHighlightLineFillPaint = new Paint(mLineFillPaint);
 
-        mAnimatorTextPaint.set(getPaint());
+        mCursorPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mCursorPaint.setStyle(Paint.Style.STROKE);
+
+        mItemBackgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mItemBackgroundPaint.setStyle(Paint.Style.FILL);
 
         final Resources.Theme theme = context.getTheme();
 
@@ -149,6 +338,8 @@ public class PinView extends AppCompatEditText {
         mPinItemSpacing = a.getDimensionPixelSize(R.styleable.PinView_itemSpacing,
                 res.getDimensionPixelSize(R.dimen.pv_pin_view_item_spacing));
         mPinItemRadius = (int) a.getDimension(R.styleable.PinView_itemRadius, 0);
+        mMaxItemsPerRow = a.getInt(R.styleable.PinView_maxItemsPerRow, 0);
+        mRowSpacing = a.getDimensionPixelSize(R.styleable.PinView_rowSpacing, mPinItemSpacing);
         mLineWidth = (int) a.getDimension(R.styleable.PinView_lineWidth,
                 res.getDimensionPixelSize(R.dimen.pv_pin_view_item_line_width));
         mLineColor = a.getColorStateList(R.styleable.PinView_lineColor);
@@ -159,25 +350,36 @@ public class PinView extends AppCompatEditText {
 
         mItemBackground = a.getDrawable(R.styleable.PinView_android_itemBackground);
         mHideLineWhenFilled = a.getBoolean(R.styleable.PinView_hideLineWhenFilled, false);
+        mItemGroups = parseItemGroups(a.getString(R.styleable.PinView_itemGroups));
+        mSeparatorWidth = a.getDimensionPixelSize(R.styleable.PinView_separatorWidth,
+                res.getDimensionPixelSize(R.dimen.pv_pin_view_separator_width));
+        mSeparatorDrawable = a.getDrawable(R.styleable.PinView_separatorDrawable);
 
         a.recycle();
 
-        if (mLineColor != null) {
-            mCurLineColor = mLineColor.getDefaultColor();
-        }
+        updateColors();
+        updateTextPaints();
         updateCursorHeight();
 
         checkItemRadius();
 
         setMaxLength(mPinItemCount);
-        mPaint.setStrokeWidth(mLineWidth);
-        setupAnimator();
+        mBorderPaint.setStrokeWidth(mLineWidth);
+        mHighlightBorderPaint.setStrokeWidth(mLineWidth);
+        mCursorPaint.setColor(mCursorColor);
+        mCursorPaint.setStrokeWidth(mCursorWidth);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            mContentLayer = new RenderNodeLayer(TAG);
+        }
 
         setTransformationMethod(null);
         disableSelectionMenu();
 
         // preserve the legacy behavior: isPasswordHidden controlled by inputType
         isPasswordHidden = isPasswordInputType(getInputType());
+
+        addTextChangedListener(mCompletionWatcher);
     }
 
     // preserve the legacy behavior: isPasswordHidden controlled by inputType
@@ -194,6 +396,7 @@ public class PinView extends AppCompatEditText {
      */
     public void setPasswordHidden(boolean hidden) {
         isPasswordHidden = hidden;
+        invalidate();
         requestLayout();
     }
 
@@ -214,9 +417,10 @@ public class PinView extends AppCompatEditText {
     @Override
     public void setTypeface(Typeface tf) {
         super.setTypeface(tf);
-        if (mAnimatorTextPaint != null) {
-            mAnimatorTextPaint.set(getPaint());
+        if (mGlyphBoundsCache != null) {
+            mGlyphBoundsCache.clear();
         }
+        updateTextPaints();
     }
 
     private void setMaxLength(int maxLength) {
@@ -227,34 +431,41 @@ public class PinView extends AppCompatEditText {
         }
     }
 
-    private void setupAnimator() {
-        mDefaultAddAnimator = ValueAnimator.ofFloat(0.5f, 1f);
-        mDefaultAddAnimator.setDuration(150);
-        mDefaultAddAnimator.setInterpolator(new DecelerateInterpolator());
-        mDefaultAddAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                float scale = (Float) animation.getAnimatedValue();
-                int alpha = (int) (255 * scale);
-                mAnimatorTextPaint.setTextSize(getTextSize() * scale);
-                mAnimatorTextPaint.setAlpha(alpha);
-                postInvalidate();
-            }
-        });
+    private void checkItemRadius() {
+        PinLayoutEngine.checkItemRadius(mViewType, mPinItemWidth, mPinItemRadius, mLineWidth);
     }
 
-    private void checkItemRadius() {
-        if (mViewType == VIEW_TYPE_LINE) {
-            float halfOfLineWidth = ((float) mLineWidth) / 2;
-            if (mPinItemRadius > halfOfLineWidth) {
-                throw new IllegalArgumentException("The itemRadius can not be greater than lineWidth when viewType is line");
+    private void configureLayoutEngine() {
+        mLayoutEngine.configure(mViewType, mPinItemCount, mPinItemWidth, mPinItemHeight,
+                mPinItemRadius, mPinItemSpacing, mLineWidth);
+        mLayoutEngine.configureRows(mMaxItemsPerRow, mRowSpacing);
+        mLayoutEngine.configureGroups(mItemGroups, mSeparatorWidth);
+    }
+
+    /**
+     * Parses a group pattern like "3,3" or "4 4 4".
+     *
+     * @return the sizes of the groups, null for no groups
+     * @throws IllegalArgumentException if a size is not a positive integer
+     */
+    @Nullable
+    private static int[] parseItemGroups(@Nullable String pattern) {
+        if (pattern == null || pattern.trim().length() == 0) {
+            return null;
+        }
+        String[] parts = pattern.trim().split("[,\\s]+");
+        int[] groups = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                groups[i] = Integer.parseInt(parts[i]);
+            } catch (NumberFormatException e) {
+                groups[i] = 0;
             }
-        } else if (mViewType == VIEW_TYPE_RECTANGLE) {
-            float halfOfItemWidth = ((float) mPinItemWidth) / 2;
-            if (mPinItemRadius > halfOfItemWidth) {
-                throw new IllegalArgumentException("The itemRadius can not be greater than itemWidth");
+            if (groups[i] <= 0) {
+                throw new IllegalArgumentException("Invalid itemGroups: " + pattern);
             }
         }
+        return groups;
     }
 
     @Override
@@ -267,16 +478,17 @@ public class PinView extends AppCompatEditText {
         int width;
         int height;
 
-        int boxHeight = mPinItemHeight;
+        configureLayoutEngine();
 
         if (widthMode == MeasureSpec.EXACTLY) {
             // Parent has told us how big to be. So be it.
             width = widthSize;
         } else {
-            int boxesWidth = (mPinItemCount - 1) * mPinItemSpacing + mPinItemCount * mPinItemWidth;
-            width = boxesWidth + ViewCompat.getPaddingEnd(this) + ViewCompat.getPaddingStart(this);
-            if (mPinItemSpacing == 0) {
-                width -= (mPinItemCount - 1) * mLineWidth;
+            width = mLayoutEngine.measureWidth(
+                    ViewCompat.getPaddingStart(this), ViewCompat.getPaddingEnd(this));
+            if (widthMode == MeasureSpec.AT_MOST) {
+                // the items scroll when they do not fit
+                width = Math.min(width, widthSize);
             }
         }
 
@@ -284,46 +496,278 @@ public class PinView extends AppCompatEditText {
             // Parent has told us how big to be. So be it.
             height = heightSize;
         } else {
-            height = boxHeight + getPaddingTop() + getPaddingBottom();
+            height = mLayoutEngine.measureHeight(getPaddingTop(), getPaddingBottom());
         }
 
         setMeasuredDimension(width, height);
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        invalidateItemGeometry();
+    }
+
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        super.setPadding(left, top, right, bottom);
+        invalidateItemGeometry();
+    }
+
+    @Override
+    public void setPaddingRelative(int start, int top, int end, int bottom) {
+        super.setPaddingRelative(start, top, end, bottom);
+        invalidateItemGeometry();
+    }
+
+    /**
+     * Replaces the whole code at once, e.g. a code pasted, autofilled or retrieved from an SMS.
+     *
+     * @see #setCode(CharSequence, boolean)
+     */
+    public void setCode(@Nullable CharSequence code) {
+        setCode(code, false);
+    }
+
+    /**
+     * Replaces the whole code at once, e.g. a code pasted, autofilled or retrieved from an SMS.
+     * <p>
+     * Unlike {@link #setText(CharSequence)} the text is replaced in place, so the text watchers
+     * are called once and the view is invalidated once, without any per character work. The
+     * input filters run once over the whole code, which is then truncated to the item count.
+     *
+     * @param code   the code, null to clear it
+     * @param reveal true to reveal the items one after the other, while the animation is enabled
+     * @see ItemAnimators#reveal()
+     */
+    public void setCode(@Nullable CharSequence code, boolean reveal) {
+        final Editable text = getText();
+        if (text == null) {
+            // not an editable text yet
+            setText(code);
+            return;
+        }
+        if (code == null) {
+            code = "";
+        }
+        // the filters run once over the whole code, as they would for a paste
+        final InputFilter[] filters = text.getFilters();
+        code = filter(filters, code, text);
+        final int length = Math.min(code.length(), mPinItemCount);
+        if (contentEquals(text, code, length)) {
+            return;
+        }
+
+        isSettingCode = true;
+        try {
+            text.setFilters(NO_FILTERS);
+            text.replace(0, text.length(), code, 0, length);
+        } finally {
+            text.setFilters(filters);
+            isSettingCode = false;
+        }
+        moveSelectionToEnd();
+
+        if (reveal && isAnimationEnable && isVisible) {
+            final ItemAnimator animator = ItemAnimators.reveal();
+            for (int i = 0; i < length; i++) {
+                mItemAnimations.start(i, animator, ItemAnimationEngine.NO_GLYPH);
+            }
+        }
+    }
+
+    /**
+     * Registers a callback to be invoked once every time the code is completed, i.e. when all
+     * the items are filled. Editing a completed code and completing it again notifies again.
+     *
+     * @param listener The callback that will run, or null
+     */
+    public void setOnPinCompleteListener(@Nullable OnPinCompleteListener listener) {
+        mOnPinCompleteListener = listener;
+    }
+
+    /**
+     * Verifies every completed code off the main thread. The verifier runs on the executor and
+     * its result is delivered to the listener on the main thread, unless the text changed in
+     * the meantime: a stale verification is cancelled if the executor is an
+     * {@link ExecutorService}, and its result is discarded in any case. A verification is
+     * cancelled as well when the view is detached, and started again if it is attached again.
+     *
+     * @param executor The executor running the verifier, e.g. a background thread
+     * @param verifier The verifier, or null to stop verifying
+     * @param listener The callback receiving the results on the main thread
+     */
+    public void setPinVerifier(@Nullable Executor executor, @Nullable PinVerifier verifier,
+                               @Nullable OnPinVerifiedListener listener) {
+        if (verifier != null && (executor == null || listener == null)) {
+            throw new IllegalArgumentException("A verifier needs an executor and a listener");
+        }
+        cancelVerification();
+        mPinVerifierExecutor = executor;
+        mPinVerifier = verifier;
+        mOnPinVerifiedListener = listener;
+    }
+
+    private void onCodeChanged(CharSequence text) {
+        if (mPinItemCount == 0 || text.length() != mPinItemCount) {
+            cancelVerification();
+            mCompletedCode = null;
+            return;
+        }
+        final String code = text.toString();
+        if (code.equals(mCompletedCode)) {
+            // e.g. set again, its verification is still valid
+            return;
+        }
+        cancelVerification();
+        mCompletedCode = code;
+
+        final int generation = mVerificationGeneration.get();
+        if (mOnPinCompleteListener != null) {
+            mOnPinCompleteListener.onPinComplete(this, code);
+        }
+        // unless the listener already changed the text
+        if (mPinVerifier != null && generation == mVerificationGeneration.get()) {
+            verify(code, generation);
+        }
+    }
+
+    private void verify(String code, int generation) {
+        mVerifyingCode = code;
+        final Verification verification = new Verification(this, code, generation);
+        if (mPinVerifierExecutor instanceof ExecutorService) {
+            mVerification = ((ExecutorService) mPinVerifierExecutor).submit(verification);
+        } else {
+            mPinVerifierExecutor.execute(verification);
+        }
+    }
+
+    private void onVerified(String code, boolean verified, @Nullable Exception error) {
+        mVerification = null;
+        mVerifyingCode = null;
+        mOnPinVerifiedListener.onPinVerified(this, code, verified, error);
+    }
+
+    /**
+     * Makes the running verification stale, and interrupts it when possible.
+     */
+    private void cancelVerification() {
+        mVerificationGeneration.incrementAndGet();
+        mVerifyingCode = null;
+        mInterruptedCode = null;
+        if (mVerification != null) {
+            mVerification.cancel(true);
+            mVerification = null;
+        }
+    }
+
+    /**
+     * Runs the filters over the replacement of the whole text, the way an {@link Editable} does.
+     */
+    private static CharSequence filter(InputFilter[] filters, CharSequence source, Spanned dest) {
+        for (InputFilter filter : filters) {
+            CharSequence filtered = filter.filter(source, 0, source.length(),
+                    dest, 0, dest.length());
+            if (filtered != null) {
+                source = filtered;
+            }
+        }
+        return source;
+    }
+
+    private static boolean contentEquals(CharSequence text, CharSequence code, int length) {
+        if (text.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != code.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     protected void onTextChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
+        if (isSettingCode) {
+            // every item may have changed, the selection is moved once the text is replaced
+            updateTransformed();
+            noteInvalidation(RenderMetrics.INVALIDATION_TEXT);
+            if (mItemLefts != null && !mItemGeometryDirty) {
+                updateItemScroll();
+            }
+            invalidate();
+            return;
+        }
+
         if (start != text.length()) {
             moveSelectionToEnd();
         }
 
-        makeBlink();
+        // redraw the changed items and both the old and the new highlighted item
+        int oldLength = text.length() - lengthAfter + lengthBefore;
 
-        if (isAnimationEnable) {
-            final boolean isAdd = lengthAfter - lengthBefore > 0;
-            if (isAdd) {
-                if (mDefaultAddAnimator != null) {
-                    mDefaultAddAnimator.end();
-                    mDefaultAddAnimator.start();
+        if (isAnimationEnable && isVisible) {
+            // several items at once on a paste, still a single frame callback
+            if (mItemAddAnimator != null) {
+                for (int i = start, end = Math.min(start + lengthAfter, mPinItemCount); i < end; i++) {
+                    mItemAnimations.start(i, mItemAddAnimator, ItemAnimationEngine.NO_GLYPH);
+                }
+            }
+            // the removed glyphs are still in the previous snapshot
+            if (mItemDeleteAnimator != null) {
+                int end = Math.min(Math.min(oldLength, mTransformedLength), mPinItemCount);
+                for (int i = Math.max(start + lengthAfter, text.length()); i < end; i++) {
+                    mItemAnimations.start(i, mItemDeleteAnimator, mTransformed[i]);
                 }
             }
         }
 
-        TransformationMethod transformation = getTransformationMethod();
-        if (transformation == null) {
-            mTransformed = getText().toString();
-        } else {
-            mTransformed = transformation.getTransformation(getText(), this).toString();
+        updateTransformed();
+
+        noteInvalidation(RenderMetrics.INVALIDATION_TEXT);
+        if (mItemLefts != null && !mItemGeometryDirty && updateItemScroll()) {
+            // every item moved
+            invalidate();
+            return;
+        }
+        invalidateItems(start, start + Math.max(lengthBefore, lengthAfter));
+        invalidateItems(oldLength, oldLength + 1);
+        invalidateItems(text.length(), text.length() + 1);
+    }
+
+    private void updateTransformed() {
+        final CharSequence text = getText();
+        final TransformationMethod transformation = getTransformationMethod();
+        CharSequence transformed = text;
+        if (transformation != null) {
+            // like TextView, rely on the transformation being a live view of the Editable
+            if (transformation != mTransformationMethod || text != mTransformationSource) {
+                mTransformationMethod = transformation;
+                mTransformationSource = text;
+                mTransformationResult = transformation.getTransformation(text, this);
+            }
+            transformed = mTransformationResult;
         }
+
+        final int length = transformed.length();
+        if (mTransformed == null || mTransformed.length < length) {
+            mTransformed = new char[Math.max(length, mPinItemCount)];
+        }
+        TextUtils.getChars(transformed, 0, length, mTransformed, 0);
+        mTransformedLength = length;
     }
 
     @Override
     protected void onFocusChanged(boolean focused, int direction, Rect previouslyFocusedRect) {
         super.onFocusChanged(focused, direction, previouslyFocusedRect);
+        noteInvalidation(RenderMetrics.INVALIDATION_STATE);
+        invalidateContentLayer();
 
         if (focused) {
             moveSelectionToEnd();
-            makeBlink();
         }
+        updateBlink();
     }
 
     @Override
@@ -336,346 +780,933 @@ public class PinView extends AppCompatEditText {
     }
 
     private void moveSelectionToEnd() {
-        setSelection(getText().length());
+        final int length = getText().length();
+        if (getSelectionStart() != length || getSelectionEnd() != length) {
+            setSelection(length);
+        }
     }
 
     @Override
     protected void drawableStateChanged() {
         super.drawableStateChanged();
+        noteInvalidation(RenderMetrics.INVALIDATION_STATE);
+        invalidateContentLayer();
+        invalidateItemPictures();
+        resetItemBackgroundStates();
+
+        updateColors();
+        syncTextPaints();
 
-        if (mLineColor == null || mLineColor.isStateful()) {
-            updateColors();
+        if (mSeparatorDrawable != null && mSeparatorDrawable.isStateful()) {
+            mSeparatorDrawable.setState(getDrawableState());
         }
     }
 
     @Override
-    protected void onDraw(Canvas canvas) {
-        canvas.save();
-
-        updatePaints();
-        drawPinView(canvas);
+    public void invalidate() {
+        invalidateContentLayer();
+        super.invalidate();
+    }
 
-        canvas.restore();
+    @Override
+    public void invalidate(Rect dirty) {
+        invalidateContentLayer();
+        super.invalidate(dirty);
     }
 
-    private void updatePaints() {
-        mPaint.setColor(mCurLineColor);
-        mPaint.setStyle(Paint.Style.STROKE);
-        mPaint.setStrokeWidth(mLineWidth);
-        getPaint().setColor(getCurrentTextColor());
+    @Override
+    public void invalidate(int l, int t, int r, int b) {
+        invalidateContentLayer();
+        super.invalidate(l, t, r, b);
     }
 
-    private void drawPinView(Canvas canvas) {
-        int highlightIdx = getText().length();
-        for (int i = 0; i < mPinItemCount; i++) {
-            boolean highlight = isFocused() && highlightIdx == i;
-            mPaint.setColor(highlight ? getLineColorForState(HIGHLIGHT_STATES) : mCurLineColor);
+    private void invalidateContentLayer() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mContentLayer != null) {
+            mContentLayer.invalidate();
+        }
+    }
 
-            updateItemRectF(i);
-            updateCenterPoint();
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final boolean measure = isMeasuring;
+        long startNanos = 0;
+        int startTextMeasures = 0;
+        if (measure) {
+            startNanos = System.nanoTime();
+            startTextMeasures = mGlyphBoundsCache.getMeasureCount();
+            mFrameCellsDrawn = 0;
+            mFramePathRebuilds = 0;
+            mFrameClipOperations = 0;
+        }
 
-            canvas.save();
-            if (mViewType == VIEW_TYPE_RECTANGLE) {
-                updatePinBoxPath(i);
-                canvas.clipPath(mPath);
-            }
-            drawItemBackground(canvas, highlight);
-            canvas.restore();
+        if (mItemGeometryDirty) {
+            updateItemGeometry();
+        }
+        if (updateItemScroll()) {
+            invalidateContentLayer();
+        }
 
-            if (highlight) {
-                drawCursor(canvas);
-            }
+        canvas.save();
+        // the geometry table ignores the scroll of TextView, only the items scroll is applied
+        canvas.translate(getScrollX() - mItemScrollX, getScrollY());
 
-            if (mViewType == VIEW_TYPE_RECTANGLE) {
-                drawPinBox(canvas, i);
-            } else if (mViewType == VIEW_TYPE_LINE) {
-                drawPinLine(canvas, i);
+        if (mItemBackgroundsDirty) {
+            updateItemBackgrounds();
+        }
+        syncTextPaints();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mContentLayer != null
+                && canvas.isHardwareAccelerated()) {
+            final int width = getWidth();
+            final int height = getHeight();
+            if (!mContentLayer.isValid(width, height)) {
+                Canvas contentCanvas = mContentLayer.beginRecording(width, height);
+                try {
+                    // the layer has the size of the view, record the scrolled window only
+                    contentCanvas.translate(-mItemScrollX, 0);
+                    drawPinView(contentCanvas);
+                } finally {
+                    mContentLayer.endRecording();
+                }
             }
+            canvas.translate(mItemScrollX, 0);
+            mContentLayer.draw(canvas);
+            canvas.translate(-mItemScrollX, 0);
+        } else {
+            drawPinView(canvas);
+        }
+        drawCursorLayer(canvas);
 
-            if (DBG) {
-                drawAnchorLine(canvas);
+        if (measure) {
+            updateRenderMetrics(System.nanoTime() - startNanos,
+                    mGlyphBoundsCache.getMeasureCount() - startTextMeasures);
+            if (isDebugOverlayEnabled) {
+                drawDebugOverlay(canvas);
             }
-
-            if (mTransformed.length() > i) {
-                if (getTransformationMethod() == null && isPasswordHidden) {
-                    drawCircle(canvas, i);
-                } else {
-                    drawText(canvas, i);
-                }
-            } else if (!TextUtils.isEmpty(getHint()) && getHint().length() == mPinItemCount) {
-                drawHint(canvas, i);
+            if (mRenderMetricsListener != null) {
+                mRenderMetricsListener.onRenderMetrics(this, mRenderMetrics);
             }
+            mInvalidationReasons = 0;
         }
 
-        // highlight the next item
-        if (isFocused() && getText().length() != mPinItemCount && mViewType == VIEW_TYPE_RECTANGLE) {
-            int index = getText().length();
-            updateItemRectF(index);
-            updateCenterPoint();
-            updatePinBoxPath(index);
-            mPaint.setColor(getLineColorForState(HIGHLIGHT_STATES));
-            drawPinBox(canvas, index);
-        }
+        canvas.restore();
     }
 
-    private int getLineColorForState(int... states) {
-        return mLineColor != null ? mLineColor.getColorForState(states, mCurLineColor) : mCurLineColor;
+    private void noteInvalidation(int reason) {
+        if (isMeasuring) {
+            mInvalidationReasons |= reason;
+        }
     }
 
-    private void drawItemBackground(Canvas canvas, boolean highlight) {
-        if (mItemBackground == null) {
-            return;
-        }
-        float delta = (float) mLineWidth / 2;
-        int left = Math.round(mItemBorderRect.left - delta);
-        int top = Math.round(mItemBorderRect.top - delta);
-        int right = Math.round(mItemBorderRect.right + delta);
-        int bottom = Math.round(mItemBorderRect.bottom + delta);
+    private void updateMeasuring() {
+        isMeasuring = mRenderMetricsListener != null || isDebugOverlayEnabled;
+        mInvalidationReasons = 0;
+    }
 
-        mItemBackground.setBounds(left, top, right, bottom);
-        mItemBackground.setState(highlight ? HIGHLIGHT_STATES : getDrawableState());
-        mItemBackground.draw(canvas);
+    private void updateRenderMetrics(long drawNanos, int textMeasurements) {
+        final RenderMetrics metrics = mRenderMetrics;
+        metrics.drawNanos = drawNanos;
+        metrics.cellsDrawn = mFrameCellsDrawn;
+        metrics.pathRebuilds = mFramePathRebuilds;
+        metrics.clipOperations = mFrameClipOperations;
+        metrics.textMeasurements = textMeasurements;
+        // invalidations issued by TextView itself are state changes as well
+        metrics.invalidationReasons = mInvalidationReasons != 0
+                ? mInvalidationReasons : RenderMetrics.INVALIDATION_STATE;
     }
 
-    private void updatePinBoxPath(int i) {
-        boolean drawRightCorner = false;
-        boolean drawLeftCorner = false;
-        if (mPinItemSpacing != 0) {
-            drawLeftCorner = drawRightCorner = true;
-        } else {
-            if (i == 0 && i != mPinItemCount - 1) {
-                drawLeftCorner = true;
-            }
-            if (i == mPinItemCount - 1 && i != 0) {
-                drawRightCorner = true;
+    /**
+     * TextView changes its paint and its text colors without telling this view, catch up once
+     * per frame instead of reading them for every item.
+     */
+    private void syncTextPaints() {
+        final TextPaint paint = getPaint();
+        if (paint.getTypeface() != mTextPaint.getTypeface()
+                || paint.getTextSize() != mTextPaint.getTextSize()
+                || paint.getFlags() != mTextPaint.getFlags()
+                || paint.getTextScaleX() != mTextPaint.getTextScaleX()
+                || paint.getTextSkewX() != mTextPaint.getTextSkewX()
+                || getCurrentTextColor() != mTextColor
+                || getCurrentHintTextColor() != mHintTextColor) {
+            updateTextPaints();
+            if (mLineColor == null) {
+                // the lines follow the text color
+                updateColors();
             }
         }
-        updateRoundRectPath(mItemBorderRect, mPinItemRadius, mPinItemRadius, drawLeftCorner, drawRightCorner);
     }
 
-    private void drawPinBox(Canvas canvas, int i) {
-        if (mHideLineWhenFilled && i < getText().length()) {
+    /**
+     * Copies the TextView paint into the text, hint and mask paints with their resolved colors.
+     */
+    private void updateTextPaints() {
+        // called from the super constructor by setTypeface, before the fields are initialized
+        if (mTextPaint == null) {
             return;
         }
-        canvas.drawPath(mPath, mPaint);
-    }
+        final TextPaint paint = getPaint();
+        mTextColor = getCurrentTextColor();
+        mHintTextColor = getCurrentHintTextColor();
 
-    private void drawPinLine(Canvas canvas, int i) {
-        if (mHideLineWhenFilled && i < getText().length()) {
-            return;
-        }
-        boolean l, r;
-        l = r = true;
-        if (mPinItemSpacing == 0 && mPinItemCount > 1) {
-            if (i == 0) {
-                // draw only left round
-                r = false;
-            } else if (i == mPinItemCount - 1) {
-                // draw only right round
-                l = false;
-            } else {
-                // draw rect
-                l = r = false;
-            }
-        }
-        mPaint.setStyle(Paint.Style.FILL);
-        mPaint.setStrokeWidth(((float) mLineWidth) / 10);
-        float halfLineWidth = ((float) mLineWidth) / 2;
-        mItemLineRect.set(
-                mItemBorderRect.left - halfLineWidth,
-                mItemBorderRect.bottom - halfLineWidth,
-                mItemBorderRect.right + halfLineWidth,
-                mItemBorderRect.bottom + halfLineWidth);
+        mTextPaint.set(paint);
+        mTextPaint.setColor(mTextColor);
+        mHintPaint.set(paint);
+        mHintPaint.setColor(mHintTextColor);
+        mMaskPaint.set(paint);
+        mMaskPaint.setStyle(Paint.Style.FILL);
+        mMaskPaint.setColor(mTextColor);
+        mAnimatorTextPaint.set(mTextPaint);
 
-        updateRoundRectPath(mItemLineRect, mPinItemRadius, mPinItemRadius, l, r);
-        canvas.drawPath(mPath, mPaint);
+        invalidateItemPictures();
     }
 
-    private void drawCursor(Canvas canvas) {
-        if (drawCursor) {
-            float cx = mItemCenterPoint.x;
-            float cy = mItemCenterPoint.y;
-            float x = cx;
-            float y = cy - mCursorHeight / 2;
-
-            int color = mPaint.getColor();
-            float width = mPaint.getStrokeWidth();
-            mPaint.setColor(mCursorColor);
-            mPaint.setStrokeWidth(mCursorWidth);
-
-            canvas.drawLine(x, y, x, y + mCursorHeight, mPaint);
-
-            mPaint.setColor(color);
-            mPaint.setStrokeWidth(width);
+    private void drawPinView(Canvas canvas) {
+        canvas.getClipBounds(mClipBounds);
+        int highlightIdx = getText().length();
+        final CharSequence hint = getHint();
+        final boolean hasHint = hint != null && hint.length() == mPinItemCount;
+        final boolean usePictures = canDrawPicture(canvas);
+        if (usePictures) {
+            validateItemPictures(hint);
         }
-    }
-
-    private void updateRoundRectPath(RectF rectF, float rx, float ry, boolean l, boolean r) {
-        updateRoundRectPath(rectF, rx, ry, l, r, r, l);
-    }
-
-    private void updateRoundRectPath(RectF rectF, float rx, float ry,
-                                     boolean tl, boolean tr, boolean br, boolean bl) {
-        mPath.reset();
-
-        float l = rectF.left;
-        float t = rectF.top;
-        float r = rectF.right;
-        float b = rectF.bottom;
-
-        float w = r - l;
-        float h = b - t;
+        final boolean masked = getTransformationMethod() == null && isPasswordHidden;
+        final boolean hasBorders = mViewType != VIEW_TYPE_NONE;
+        final int highlightBorder = isFocused() && highlightIdx < mPinItemCount ? highlightIdx : -1;
+        final int hiddenBorders = mHideLineWhenFilled ? Math.min(highlightIdx, mPinItemCount) : 0;
+        // only the items in the clip, whatever the item count
+        final int outset = getItemOutset();
+        mLayoutEngine.getVisibleRange(mClipBounds.left, mClipBounds.top,
+                mClipBounds.right, mClipBounds.bottom, outset, mVisibleRange);
+        for (int i = mVisibleRange[0], end = mVisibleRange[1]; i < end; i++) {
+            if (!isItemInClip(i)) {
+                continue;
+            }
+            if (isMeasuring) {
+                mFrameCellsDrawn++;
+            }
+            boolean highlight = isFocused() && highlightIdx == i;
+            boolean filled = i < highlightIdx;
+            int variant = highlight ? ITEM_VARIANT_HIGHLIGHT
+                    : filled ? ITEM_VARIANT_FILLED : ITEM_VARIANT_EMPTY;
+
+            final boolean animated = mItemAnimations.isAnimating(i);
+            if (animated) {
+                canvas.save();
+                canvas.translate(mItemAnimations.getTranslationX(i), mItemAnimations.getTranslationY(i));
+            }
 
-        float lw = w - 2 * rx;// line width
-        float lh = h - 2 * ry;// line height
+            if (usePictures) {
+                drawItemPicture(canvas, i, variant, hasHint ? hint : null);
+            } else {
+                drawItemChrome(canvas, i, variant, hasHint ? hint : null);
+            }
+            if (animated && hasBorders && i != highlightBorder && i >= hiddenBorders) {
+                // out of the border batch while animated
+                drawItemBorder(canvas, i, false);
+            }
 
-        mPath.moveTo(l, t + ry);
+            final char glyph = i < mTransformedLength ? mTransformed[i]
+                    : animated ? mItemAnimations.getGlyph(i) : ItemAnimationEngine.NO_GLYPH;
+            if (i < mTransformedLength || glyph != ItemAnimationEngine.NO_GLYPH) {
+                loadItemGeometry(i);
+                Paint paint = masked ? mMaskPaint : mTextPaint;
+                if (animated) {
+                    final float scale = mItemAnimations.getScale(i);
+                    canvas.scale(scale, scale, mItemCenterXs[i], mItemCenterYs[i]);
+                    paint = getAnimatorPaint(mItemAnimations.getAlpha(i));
+                }
+                if (masked) {
+                    drawCircle(canvas, paint);
+                } else {
+                    drawTextAtBox(canvas, paint, glyph);
+                }
+            }
 
-        if (tl) {
-            mPath.rQuadTo(0, -ry, rx, -ry);// top-left corner
-        } else {
-            mPath.rLineTo(0, -ry);
-            mPath.rLineTo(rx, 0);
+            if (animated) {
+                canvas.restore();
+            }
         }
 
-        mPath.rLineTo(lw, 0);
+        drawSeparators(canvas);
 
-        if (tr) {
-            mPath.rQuadTo(rx, 0, rx, ry);// top-right corner
-        } else {
-            mPath.rLineTo(rx, 0);
-            mPath.rLineTo(0, ry);
+        if (!hasBorders) {
+            return;
         }
 
-        mPath.rLineTo(0, lh);
+        // all the borders sharing the line color in one call, but the animated ones
+        // the range of the batch follows the scrolled window, not the clip of each invalidation
+        mLayoutEngine.getVisibleRange(mItemScrollX, 0, mItemScrollX + getWidth(), getHeight(),
+                outset, mVisibleRange);
+        updateBorderBatch(highlightBorder, hiddenBorders, mVisibleRange[0], mVisibleRange[1]);
+        canvas.drawPath(mBorderBatchPath, mViewType == VIEW_TYPE_LINE ? mLineFillPaint : mBorderPaint);
 
-        if (br) {
-            mPath.rQuadTo(0, ry, -rx, ry);// bottom-right corner
-        } else {
-            mPath.rLineTo(0, ry);
-            mPath.rLineTo(-rx, 0);
+        // highlight the next item
+        if (highlightBorder >= 0 && isItemInClip(highlightBorder)) {
+            if (mItemAnimations.isAnimating(highlightBorder)) {
+                canvas.save();
+                canvas.translate(mItemAnimations.getTranslationX(highlightBorder),
+                        mItemAnimations.getTranslationY(highlightBorder));
+                drawItemBorder(canvas, highlightBorder, true);
+                canvas.restore();
+            } else {
+                drawItemBorder(canvas, highlightBorder, true);
+            }
         }
+    }
 
-        mPath.rLineTo(-lw, 0);
-
-        if (bl) {
-            mPath.rQuadTo(-rx, 0, -rx, -ry);// bottom-left corner
+    private void drawItemBorder(Canvas canvas, int i, boolean highlight) {
+        if (mViewType == VIEW_TYPE_RECTANGLE) {
+            drawPinBox(canvas, i, highlight ? mHighlightBorderPaint : mBorderPaint);
         } else {
-            mPath.rLineTo(-rx, 0);
-            mPath.rLineTo(0, -ry);
+            drawPinLine(canvas, i, highlight ? mHighlightLineFillPaint : mLineFillPaint);
         }
-
-        mPath.rLineTo(0, -lh);
-
-        mPath.close();
     }
 
-    private void updateItemRectF(int i) {
-        float halfLineWidth = ((float) mLineWidth) / 2;
-        float left = getScrollX() + ViewCompat.getPaddingStart(this) + i * (mPinItemSpacing + mPinItemWidth) + halfLineWidth;
-        if (mPinItemSpacing == 0 && i > 0) {
-            left = left - (mLineWidth) * i;
-        }
-        float right = left + mPinItemWidth - mLineWidth;
-        float top = getScrollY() + getPaddingTop() + halfLineWidth;
-        float bottom = top + mPinItemHeight - mLineWidth;
-
-        mItemBorderRect.set(left, top, right, bottom);
+    /**
+     * @return the text paint faded to the alpha of an animated glyph
+     */
+    private Paint getAnimatorPaint(float alpha) {
+        mAnimatorTextPaint.setColor(mTextColor);
+        mAnimatorTextPaint.setAlpha(Math.round(Color.alpha(mTextColor) * alpha));
+        return mAnimatorTextPaint;
     }
 
-    private void drawText(Canvas canvas, int i) {
-        Paint paint = getPaintByIndex(i);
-        // 1, Rect(4, -39, 20, 0)
-        // 您, Rect(2, -47, 51, 3)
-        // *, Rect(0, -39, 23, -16)
-        // =, Rect(4, -26, 26, -10)
-        // -, Rect(1, -19, 14, -14)
-        // +, Rect(2, -32, 29, -3)
-        drawTextAtBox(canvas, paint, mTransformed, i);
+    /**
+     * Invalidates an animated item, outset by how far its animation moved it.
+     */
+    private void invalidateAnimatedItem(int i, float reach) {
+        noteInvalidation(RenderMetrics.INVALIDATION_ANIMATION);
+        if (mItemLefts == null || mItemGeometryDirty) {
+            invalidate();
+        } else if (getItemsBounds(i, i + 1, mDirtyRect)) {
+            final int outset = (int) Math.ceil(reach);
+            invalidate(mDirtyRect.left - outset, mDirtyRect.top - outset,
+                    mDirtyRect.right + outset, mDirtyRect.bottom + outset);
+        }
     }
 
-    private void drawHint(Canvas canvas, int i) {
-        Paint paint = getPaintByIndex(i);
-        paint.setColor(getCurrentHintTextColor());
-        drawTextAtBox(canvas, paint, getHint(), i);
+    /**
+     * Draws the separator drawable centered between every two groups, at most its intrinsic size.
+     */
+    private void drawSeparators(Canvas canvas) {
+        final Drawable separator = mSeparatorDrawable;
+        if (separator == null) {
+            return;
+        }
+        final float[] rects = mLayoutEngine.getSeparatorRects();
+        for (int i = 0, count = mLayoutEngine.getSeparatorCount(); i < count; i++) {
+            final int o = i * 4;
+            int left = Math.round(rects[o]);
+            int top = Math.round(rects[o + 1]);
+            int right = Math.round(rects[o + 2]);
+            int bottom = Math.round(rects[o + 3]);
+            if (!mClipBounds.intersects(left, top, right, bottom)) {
+                continue;
+            }
+            int width = separator.getIntrinsicWidth();
+            if (width > 0 && width < right - left) {
+                left = (left + right - width) / 2;
+                right = left + width;
+            }
+            int height = separator.getIntrinsicHeight();
+            if (height > 0 && height < bottom - top) {
+                top = (top + bottom - height) / 2;
+                bottom = top + height;
+            }
+            separator.setBounds(left, top, right, bottom);
+            separator.draw(canvas);
+        }
     }
 
-    private void drawTextAtBox(Canvas canvas, Paint paint, CharSequence text, int charAt) {
-        paint.getTextBounds(text.toString(), charAt, charAt + 1, mTextRect);
-        float cx = mItemCenterPoint.x;
-        float cy = mItemCenterPoint.y;
+    /**
+     * Merges the borders of the items in [first, end) but the highlighted one and the hidden
+     * filled ones, rebuilt only when that set of items changes.
+     */
+    private void updateBorderBatch(int highlight, int hidden, int first, int end) {
+        if (!mBorderBatchDirty && mBorderBatchHighlight == highlight && mBorderBatchHidden == hidden
+                && mBorderBatchFirst == first && mBorderBatchEnd == end) {
+            return;
+        }
+        mBorderBatchDirty = false;
+        mBorderBatchHighlight = highlight;
+        mBorderBatchHidden = hidden;
+        mBorderBatchFirst = first;
+        mBorderBatchEnd = end;
+
+        mBorderBatchPath.reset();
+        float[] segments = mLayoutEngine.getPathSegments();
+        int[] segmentCounts = mLayoutEngine.getPathSegmentCounts();
+        for (int i = Math.max(hidden, first); i < end; i++) {
+            if (i != highlight && !mItemAnimations.isAnimating(i)) {
+                appendPath(mBorderBatchPath, segments, i * PinLayoutEngine.PATH_STRIDE, segmentCounts[i]);
+            }
+        }
+        if (isMeasuring) {
+            mFramePathRebuilds++;
+        }
+    }
+
+    /**
+     * Draws the static part of an item: its background and its hint, the borders are batched
+     * by {@link #drawPinView(Canvas)}.
+     */
+    private void drawItemChrome(Canvas canvas, int i, int variant, @Nullable CharSequence hint) {
+        final boolean highlight = variant == ITEM_VARIANT_HIGHLIGHT;
+
+        loadItemGeometry(i);
+
+        if (mItemBackground instanceof ColorDrawable && mViewType == VIEW_TYPE_RECTANGLE) {
+            // fill the cell shape directly, no need to clip a plain color
+            drawItemBackgroundColor(canvas, i);
+        } else if (mItemBackground != null && !drawItemBackgroundBitmap(canvas, i, highlight)) {
+            canvas.save();
+            if (mViewType == VIEW_TYPE_RECTANGLE) {
+                canvas.clipPath(mItemBoxPaths[i]);
+                if (isMeasuring) {
+                    mFrameClipOperations++;
+                }
+            }
+            drawItemBackground(canvas, i, highlight);
+            canvas.restore();
+        }
+
+        if (variant != ITEM_VARIANT_FILLED && hint != null) {
+            drawHint(canvas, hint, i);
+        }
+    }
+
+    /**
+     * Hardware canvases can only draw a Picture since Android M.
+     */
+    private static boolean canDrawPicture(Canvas canvas) {
+        return !canvas.isHardwareAccelerated() || Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
+    /**
+     * Replays the chrome of the item, recorded again only when its variant changed, e.g.
+     * for the item losing and the one gaining the highlight.
+     */
+    private void drawItemPicture(Canvas canvas, int i, int variant, @Nullable CharSequence hint) {
+        Picture picture = mItemPictures[i];
+        if (picture == null) {
+            picture = mItemPictures[i] = new Picture();
+        }
+        // the picture would keep an evicted background alive
+        final ItemBackgroundCache.Entry background = mItemPictureBackgrounds[i];
+        final boolean evicted = background != null && background.isEvicted();
+        if (mItemPictureVariants[i] != variant || evicted) {
+            // recorded in the view coordinates, replayed without a save and a translation
+            final int outset = getItemOutset();
+            final int right = (int) Math.ceil(Math.max(mItemLefts[i], mItemRights[i])) + outset;
+            final int bottom = (int) Math.ceil(Math.max(mItemTops[i], mItemBottoms[i])) + outset;
+            Canvas pictureCanvas = picture.beginRecording(right, bottom);
+            mDrawnItemBackground = null;
+            // without the cache once evicted: caching it again would evict another background,
+            // recorded again in turn, whenever the visible backgrounds exceed the budget
+            isRecordingUncached = evicted;
+            try {
+                drawItemChrome(pictureCanvas, i, variant, hint);
+            } finally {
+                picture.endRecording();
+                isRecordingUncached = false;
+            }
+            mItemPictureBackgrounds[i] = mDrawnItemBackground;
+            mItemPictureVariants[i] = (byte) variant;
+        }
+        canvas.drawPicture(picture);
+    }
+
+    /**
+     * Drops the recorded chrome if anything it depends on changed since it was recorded.
+     */
+    private void validateItemPictures(CharSequence hint) {
+        if (mItemPictures.length != mPinItemCount) {
+            mItemPictures = new Picture[mPinItemCount];
+            mItemPictureVariants = new byte[mPinItemCount];
+            mItemPictureBackgrounds = new ItemBackgroundCache.Entry[mPinItemCount];
+            invalidateItemPictures();
+        }
+        if (mPicturesHint != hint
+                || mPicturesItemBackground != mItemBackground) {
+            mPicturesHint = hint;
+            mPicturesItemBackground = mItemBackground;
+            invalidateItemPictures();
+        }
+    }
+
+    /**
+     * Drops the recorded chrome along with the item backgrounds it references.
+     */
+    private void releaseItemPictures() {
+        // may be hidden from the super constructor, before the fields are initialized
+        if (mItemPictures == null) {
+            return;
+        }
+        Arrays.fill(mItemPictures, null);
+        Arrays.fill(mItemPictureBackgrounds, null);
+        invalidateItemPictures();
+    }
+
+    private void invalidateItemPictures() {
+        // called from the super constructor by setTypeface, before the fields are initialized
+        if (mItemPictureVariants == null) {
+            return;
+        }
+        Arrays.fill(mItemPictureVariants, ITEM_VARIANT_NONE);
+    }
+
+    private void drawItemBackground(Canvas canvas, int i, boolean highlight) {
+        final Drawable background = mItemBackgrounds[i];
+        if (background == null) {
+            return;
+        }
+        final byte state = highlight ? ITEM_STATE_HIGHLIGHT : ITEM_STATE_NORMAL;
+        if (background == mItemBackground) {
+            // shared by all the items, there was no constant state to copy
+            setItemBackgroundBounds(background, i);
+            background.setState(highlight ? HIGHLIGHT_STATES : getDrawableState());
+        } else if (mItemBackgroundStates[i] != state) {
+            background.setState(highlight ? HIGHLIGHT_STATES : getDrawableState());
+            mItemBackgroundStates[i] = state;
+        }
+        background.draw(canvas);
+    }
+
+    /**
+     * Draws the item background rasterized by the {@link ItemBackgroundCache}, rasterizing it
+     * on a miss. A plain color is cheaper to draw than a bitmap and is never cached.
+     *
+     * @return false if the background can not be cached and has to be drawn directly
+     */
+    private boolean drawItemBackgroundBitmap(Canvas canvas, int i, boolean highlight) {
+        if (!isItemBackgroundCacheEnabled || isRecordingUncached
+                || mItemBackground instanceof ColorDrawable) {
+            return false;
+        }
+        final Drawable.ConstantState constantState = mItemBackground.getConstantState();
+        if (constantState == null) {
+            return false;
+        }
+        float delta = (float) mLineWidth / 2;
+        int left = Math.round(mItemLefts[i] - delta);
+        int top = Math.round(mItemTops[i] - delta);
+        int width = Math.round(mItemRights[i] + delta) - left;
+        int height = Math.round(mItemBottoms[i] + delta) - top;
+        if (width <= 0 || height <= 0 || (long) width * height * 4 > ItemBackgroundCache.getMaxBytes()) {
+            return false;
+        }
+
+        final boolean rectangle = mViewType == VIEW_TYPE_RECTANGLE;
+        mItemBackgroundKey.set(constantState, mViewType, width, height, mPinItemRadius, mLineWidth,
+                rectangle ? mLayoutEngine.getBoxCorners(i) : 0,
+                highlight ? HIGHLIGHT_STATES : getDrawableState());
+        ItemBackgroundCache.Entry entry = ItemBackgroundCache.get(mItemBackgroundKey);
+        Bitmap bitmap = entry != null ? entry.getBitmap() : null;
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            Canvas bitmapCanvas = new Canvas(bitmap);
+            bitmapCanvas.translate(-left, -top);
+            if (rectangle) {
+                bitmapCanvas.clipPath(mItemBoxPaths[i]);
+                if (isMeasuring) {
+                    mFrameClipOperations++;
+                }
+            }
+            drawItemBackground(bitmapCanvas, i, highlight);
+            entry = ItemBackgroundCache.put(mItemBackgroundKey, bitmap);
+        }
+        mDrawnItemBackground = entry;
+        canvas.drawBitmap(bitmap, left, top, null);
+        return true;
+    }
+
+    /**
+     * Gives every item its own copy of the item background sharing the same constant state,
+     * recreated when the background changes and positioned when the layout changes.
+     */
+    private void updateItemBackgrounds() {
+        mItemBackgroundsDirty = false;
+        final int count = mPinItemCount;
+        if (mItemBackgrounds.length != count) {
+            mItemBackgrounds = new Drawable[count];
+            mItemBackgroundStates = new byte[count];
+            mItemBackgroundsSource = null;
+        }
+        if (mItemBackgroundsSource != mItemBackground) {
+            mItemBackgroundsSource = mItemBackground;
+            Drawable.ConstantState constantState =
+                    mItemBackground != null ? mItemBackground.getConstantState() : null;
+            for (int i = 0; i < count; i++) {
+                mItemBackgrounds[i] = constantState != null
+                        ? constantState.newDrawable(getResources()).mutate() : mItemBackground;
+                mItemBackgroundStates[i] = ITEM_STATE_UNKNOWN;
+            }
+        }
+        if (mItemLefts == null || mItemLefts.length < count) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (mItemBackgrounds[i] != null && mItemBackgrounds[i] != mItemBackground) {
+                setItemBackgroundBounds(mItemBackgrounds[i], i);
+            }
+        }
+    }
+
+    private void setItemBackgroundBounds(Drawable background, int i) {
+        float delta = (float) mLineWidth / 2;
+        int left = Math.round(mItemLefts[i] - delta);
+        int top = Math.round(mItemTops[i] - delta);
+        int right = Math.round(mItemRights[i] + delta);
+        int bottom = Math.round(mItemBottoms[i] + delta);
+        background.setBounds(left, top, right, bottom);
+    }
+
+    /**
+     * Forces the next frame to recreate the per item backgrounds, the drawable may have been
+     * mutated in place.
+     */
+    private void invalidateItemBackgrounds() {
+        mItemBackgroundsSource = null;
+        mItemBackgroundsDirty = true;
+        invalidateItemPictures();
+    }
+
+    private void resetItemBackgroundStates() {
+        // called from the super constructor, before the fields are initialized
+        if (mItemBackgroundStates == null) {
+            return;
+        }
+        for (int i = 0; i < mItemBackgroundStates.length; i++) {
+            mItemBackgroundStates[i] = ITEM_STATE_UNKNOWN;
+        }
+    }
+
+    /**
+     * Clip-free version of {@link #drawItemBackground(Canvas, int, boolean)} for
+     * {@link ColorDrawable}, the clipped area of the background is exactly the box path of
+     * the item.
+     */
+    private void drawItemBackgroundColor(Canvas canvas, int i) {
+        int color = ((ColorDrawable) mItemBackground).getColor();
+        if (Color.alpha(color) == 0) {
+            return;
+        }
+        mItemBackgroundPaint.setColor(color);
+        canvas.drawPath(mItemBoxPaths[i], mItemBackgroundPaint);
+    }
+
+    private void drawPinBox(Canvas canvas, int i, Paint paint) {
+        if (mHideLineWhenFilled && i < getText().length()) {
+            return;
+        }
+        canvas.drawPath(mItemBoxPaths[i], paint);
+    }
+
+    private void drawPinLine(Canvas canvas, int i, Paint paint) {
+        if (mHideLineWhenFilled && i < getText().length()) {
+            return;
+        }
+        canvas.drawPath(mItemLinePaths[i], paint);
+    }
+
+    /**
+     * The cursor is drawn on top of the items so that a blink never has to redraw them.
+     */
+    private void drawCursorLayer(Canvas canvas) {
+        int index = getText().length();
+        if (drawCursor && isFocused() && index < mPinItemCount) {
+            loadItemGeometry(index);
+            drawCursor(canvas);
+        }
+    }
+
+    private void drawCursor(Canvas canvas) {
+        if (drawCursor) {
+            float cx = mItemCenterPoint.x;
+            float cy = mItemCenterPoint.y;
+            float x = cx;
+            float y = cy - mCursorHeight / 2;
+
+            canvas.drawLine(x, y, x, y + mCursorHeight, mCursorPaint);
+        }
+    }
+
+    private void invalidateItemGeometry() {
+        mItemGeometryDirty = true;
+        invalidate();
+    }
+
+    /**
+     * Rebuilds the cell geometry table, called only after a layout or geometry change.
+     */
+    private void updateItemGeometry() {
+        configureLayoutEngine();
+        mLayoutEngine.layout(ViewCompat.getPaddingStart(this), getPaddingTop());
+
+        mItemLefts = mLayoutEngine.getItemLefts();
+        mItemTops = mLayoutEngine.getItemTops();
+        mItemRights = mLayoutEngine.getItemRights();
+        mItemBottoms = mLayoutEngine.getItemBottoms();
+        mItemCenterXs = mLayoutEngine.getItemCenterXs();
+        mItemCenterYs = mLayoutEngine.getItemCenterYs();
+        updateItemPaths(mLayoutEngine.getItemCount());
+        mContentWidth = mLayoutEngine.measureWidth(
+                ViewCompat.getPaddingStart(this), ViewCompat.getPaddingEnd(this));
+        mContentHeight = mLayoutEngine.measureHeight(getPaddingTop(), getPaddingBottom());
+        invalidateItemPictures();
+        mBorderBatchDirty = true;
+        mItemBackgroundsDirty = true;
+        mItemGeometryDirty = false;
+    }
+
+    /**
+     * Rebuilds the cached border path of every cell from the segments of the layout engine.
+     */
+    private void updateItemPaths(int count) {
+        if (mItemBoxPaths.length != count) {
+            mItemBoxPaths = new Path[count];
+            mItemLinePaths = new Path[count];
+        }
+        Path[] paths = null;
+        if (mViewType == VIEW_TYPE_RECTANGLE) {
+            paths = mItemBoxPaths;
+        } else if (mViewType == VIEW_TYPE_LINE) {
+            paths = mItemLinePaths;
+        }
+        if (paths == null) {
+            return;
+        }
+        float[] segments = mLayoutEngine.getPathSegments();
+        int[] segmentCounts = mLayoutEngine.getPathSegmentCounts();
+        for (int i = 0; i < count; i++) {
+            if (paths[i] == null) {
+                paths[i] = new Path();
+            }
+            buildPath(paths[i], segments, i * PinLayoutEngine.PATH_STRIDE, segmentCounts[i]);
+        }
+        if (isMeasuring) {
+            mFramePathRebuilds += count;
+        }
+    }
+
+    private static void buildPath(Path path, float[] segments, int offset, int count) {
+        path.reset();
+        appendPath(path, segments, offset, count);
+    }
+
+    private static void appendPath(Path path, float[] segments, int offset, int count) {
+        for (int o = offset, end = offset + count * PinLayoutEngine.SEGMENT_SIZE;
+             o < end; o += PinLayoutEngine.SEGMENT_SIZE) {
+            switch ((int) segments[o]) {
+                case PinLayoutEngine.OP_MOVE_TO:
+                    path.moveTo(segments[o + 1], segments[o + 2]);
+                    break;
+                case PinLayoutEngine.OP_R_LINE_TO:
+                    path.rLineTo(segments[o + 1], segments[o + 2]);
+                    break;
+                case PinLayoutEngine.OP_R_QUAD_TO:
+                    path.rQuadTo(segments[o + 1], segments[o + 2], segments[o + 3], segments[o + 4]);
+                    break;
+                case PinLayoutEngine.OP_CLOSE:
+                    path.close();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Invalidates the bounds of the items in [from, to), falls back to a full invalidation
+     * while the geometry table is not ready.
+     */
+    private void invalidateItems(int from, int to) {
+        if (mItemLefts == null || mItemGeometryDirty) {
+            invalidate();
+        } else if (getItemsBounds(from, to, mDirtyRect)) {
+            invalidate(mDirtyRect.left, mDirtyRect.top, mDirtyRect.right, mDirtyRect.bottom);
+        }
+    }
+
+    /**
+     * Scrolls the items horizontally when they are wider than the view, just enough to keep
+     * the item of the cursor visible.
+     *
+     * @return true if the scroll changed
+     */
+    private boolean updateItemScroll() {
+        final int width = getWidth();
+        final int maxScroll = Math.max(0, mContentWidth - width);
+        int scroll = mItemScrollX;
+        if (maxScroll > 0 && mPinItemCount > 0 && width > 0) {
+            final int index = Math.min(getText().length(), mPinItemCount - 1);
+            final int outset = getItemOutset();
+            final int left = (int) mItemLefts[index] - outset - ViewCompat.getPaddingStart(this);
+            final int right = (int) Math.ceil(mItemRights[index]) + outset + ViewCompat.getPaddingEnd(this);
+            if (left < scroll) {
+                scroll = left;
+            } else if (right > scroll + width) {
+                scroll = right - width;
+            }
+        }
+        scroll = Math.max(0, Math.min(scroll, maxScroll));
+        if (scroll == mItemScrollX) {
+            return false;
+        }
+        mItemScrollX = scroll;
+        return true;
+    }
+
+    /**
+     * @return how far the line and the anti-aliased border are drawn out of the item rect
+     */
+    private int getItemOutset() {
+        return (mLineWidth + 1) / 2 + 1;
+    }
+
+    /**
+     * Computes the bounds of the items in [from, to) in the view's scrolled coordinates.
+     *
+     * @return false if the range is empty
+     */
+    private boolean getItemsBounds(int from, int to, Rect out) {
+        from = Math.max(from, 0);
+        to = Math.min(to, mPinItemCount);
+        if (from >= to) {
+            return false;
+        }
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            left = Math.min(left, mItemLefts[i]);
+            top = Math.min(top, mItemTops[i]);
+            right = Math.max(right, mItemRights[i]);
+            bottom = Math.max(bottom, mItemBottoms[i]);
+        }
+        int outset = getItemOutset();
+        int dx = getScrollX() - mItemScrollX;
+        out.set((int) left - outset + dx, (int) top - outset + getScrollY(),
+                (int) Math.ceil(right) + outset + dx, (int) Math.ceil(bottom) + outset + getScrollY());
+        return true;
+    }
+
+    private boolean isItemInClip(int i) {
+        int outset = getItemOutset();
+        return mClipBounds.intersects((int) mItemLefts[i] - outset, (int) mItemTops[i] - outset,
+                (int) Math.ceil(mItemRights[i]) + outset, (int) Math.ceil(mItemBottoms[i]) + outset);
+    }
+
+    private void loadItemGeometry(int i) {
+        mItemBorderRect.set(mItemLefts[i], mItemTops[i], mItemRights[i], mItemBottoms[i]);
+        mItemCenterPoint.set(mItemCenterXs[i], mItemCenterYs[i]);
+    }
+
+    private void drawHint(Canvas canvas, CharSequence hint, int i) {
+        drawTextAtBox(canvas, mHintPaint, hint.charAt(i));
+    }
+
+    private void drawTextAtBox(Canvas canvas, Paint paint, char c) {
+        // 1, Rect(4, -39, 20, 0)
+        // 您, Rect(2, -47, 51, 3)
+        // *, Rect(0, -39, 23, -16)
+        // =, Rect(4, -26, 26, -10)
+        // -, Rect(1, -19, 14, -14)
+        // +, Rect(2, -32, 29, -3)
+        mGlyph[0] = c;
+        mGlyphBoundsCache.getBounds(paint, c, mTextRect);
+        float cx = mItemCenterPoint.x;
+        float cy = mItemCenterPoint.y;
         float x = cx - Math.abs((float) mTextRect.width()) / 2 - mTextRect.left;
         float y = cy + Math.abs((float) mTextRect.height()) / 2 - mTextRect.bottom;// always center vertical
-        canvas.drawText(text, charAt, charAt + 1, x, y, paint);
+        if (mGlyphAtlas != null && paint != mHintPaint && mGlyphAtlas.drawGlyph(canvas, c, x, y, paint)) {
+            return;
+        }
+        canvas.drawText(mGlyph, 0, 1, x, y, paint);
     }
 
-    private void drawCircle(Canvas canvas, int i) {
-        Paint paint = getPaintByIndex(i);
+    private void drawCircle(Canvas canvas, Paint paint) {
         float cx = mItemCenterPoint.x;
         float cy = mItemCenterPoint.y;
+        if (mGlyphAtlas != null && mGlyphAtlas.drawCircle(canvas, cx, cy, paint)) {
+            return;
+        }
         canvas.drawCircle(cx, cy, paint.getTextSize() / 2, paint);
     }
 
-    private Paint getPaintByIndex(int i) {
-        if (isAnimationEnable && i == getText().length() - 1) {
-            mAnimatorTextPaint.setColor(getPaint().getColor());
-            return mAnimatorTextPaint;
-        } else {
-            return getPaint();
+    /**
+     * Draws the anchor lines of every item, for seeing the font position,
+     * and the metrics of the current frame.
+     */
+    private void drawDebugOverlay(Canvas canvas) {
+        if (mDebugPaint == null) {
+            mDebugPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mDebugPaint.setColor(Color.RED);
+            mDebugPaint.setStrokeWidth(1);
+            mDebugPaint.setTextSize(dpToPx(10));
+            mDebugText = new StringBuilder();
+        }
+        for (int i = 0; i < mPinItemCount; i++) {
+            loadItemGeometry(i);
+            drawAnchorLine(canvas);
         }
+
+        final RenderMetrics metrics = mRenderMetrics;
+        mDebugText.setLength(0);
+        mDebugText.append(metrics.drawNanos / 1000).append("us")
+                .append(" cells=").append(metrics.cellsDrawn)
+                .append(" paths=").append(metrics.pathRebuilds)
+                .append(" clips=").append(metrics.clipOperations)
+                .append(" measures=").append(metrics.textMeasurements);
+        canvas.drawText(mDebugText, 0, mDebugText.length(),
+                getPaddingLeft(), getPaddingTop() + mDebugPaint.getTextSize(), mDebugPaint);
     }
 
-    /**
-     * For seeing the font position
-     */
     private void drawAnchorLine(Canvas canvas) {
         float cx = mItemCenterPoint.x;
         float cy = mItemCenterPoint.y;
-        mPaint.setStrokeWidth(1);
-        cx -= mPaint.getStrokeWidth() / 2;
-        cy -= mPaint.getStrokeWidth() / 2;
-
-        mPath.reset();
-        mPath.moveTo(cx, mItemBorderRect.top);
-        mPath.lineTo(cx, mItemBorderRect.top + Math.abs(mItemBorderRect.height()));
-        canvas.drawPath(mPath, mPaint);
+        cx -= mDebugPaint.getStrokeWidth() / 2;
+        cy -= mDebugPaint.getStrokeWidth() / 2;
 
-        mPath.reset();
-        mPath.moveTo(mItemBorderRect.left, cy);
-        mPath.lineTo(mItemBorderRect.left + Math.abs(mItemBorderRect.width()), cy);
-        canvas.drawPath(mPath, mPaint);
-
-        mPath.reset();
-
-        mPaint.setStrokeWidth(mLineWidth);
+        canvas.drawLine(cx, mItemBorderRect.top,
+                cx, mItemBorderRect.top + Math.abs(mItemBorderRect.height()), mDebugPaint);
+        canvas.drawLine(mItemBorderRect.left, cy,
+                mItemBorderRect.left + Math.abs(mItemBorderRect.width()), cy, mDebugPaint);
     }
 
+    /**
+     * Resolves the line colors for the current drawable state into the border and line paints.
+     */
     private void updateColors() {
+        // called from the super constructor by drawableStateChanged, before the paints exist
+        if (mBorderPaint == null) {
+            return;
+        }
         boolean inval = false;
 
         int color;
+        int highlightColor;
         if (mLineColor != null) {
             color = mLineColor.getColorForState(getDrawableState(), 0);
+            highlightColor = mLineColor.getColorForState(HIGHLIGHT_STATES, color);
         } else {
-            color = getCurrentTextColor();
+            color = highlightColor = getCurrentTextColor();
         }
 
-        if (color != mCurLineColor) {
+        if (color != mCurLineColor || highlightColor != mHighlightLineColor) {
             mCurLineColor = color;
+            mHighlightLineColor = highlightColor;
             inval = true;
         }
+        mBorderPaint.setColor(color);
+        mLineFillPaint.setColor(color);
+        mHighlightBorderPaint.setColor(highlightColor);
+        mHighlightLineFillPaint.setColor(highlightColor);
 
         if (inval) {
             invalidate();
         }
     }
 
-    private void updateCenterPoint() {
-        float cx = mItemBorderRect.left + Math.abs(mItemBorderRect.width()) / 2;
-        float cy = mItemBorderRect.top + Math.abs(mItemBorderRect.height()) / 2;
-        mItemCenterPoint.set(cx, cy);
-    }
-
     private static boolean isPasswordInputType(int inputType) {
         final int variation =
                 inputType & (EditorInfo.TYPE_MASK_CLASS | EditorInfo.TYPE_MASK_VARIATION);
@@ -754,7 +1785,10 @@ public class PinView extends AppCompatEditText {
      */
     public void setLineWidth(@Px int borderWidth) {
         mLineWidth = borderWidth;
+        mBorderPaint.setStrokeWidth(mLineWidth);
+        mHighlightBorderPaint.setStrokeWidth(mLineWidth);
         checkItemRadius();
+        invalidateItemGeometry();
         requestLayout();
     }
 
@@ -775,6 +1809,7 @@ public class PinView extends AppCompatEditText {
     public void setItemCount(int count) {
         mPinItemCount = count;
         setMaxLength(count);
+        invalidateItemGeometry();
         requestLayout();
     }
 
@@ -795,6 +1830,7 @@ public class PinView extends AppCompatEditText {
     public void setItemRadius(@Px int itemRadius) {
         mPinItemRadius = itemRadius;
         checkItemRadius();
+        invalidateItemGeometry();
         requestLayout();
     }
 
@@ -814,6 +1850,7 @@ public class PinView extends AppCompatEditText {
      */
     public void setItemSpacing(@Px int itemSpacing) {
         mPinItemSpacing = itemSpacing;
+        invalidateItemGeometry();
         requestLayout();
     }
 
@@ -826,6 +1863,121 @@ public class PinView extends AppCompatEditText {
         return mPinItemSpacing;
     }
 
+    /**
+     * Wraps the items in rows of at most this many items, the height of the view grows by
+     * rows. 0, the default, keeps all the items in a single row.
+     *
+     * @attr ref R.styleable#PinView_maxItemsPerRow
+     * @see #getMaxItemsPerRow()
+     */
+    public void setMaxItemsPerRow(int maxItemsPerRow) {
+        mMaxItemsPerRow = maxItemsPerRow;
+        invalidateItemGeometry();
+        requestLayout();
+    }
+
+    /**
+     * @return Returns the maximum count of items in a row, 0 for a single row.
+     * @see #setMaxItemsPerRow(int)
+     */
+    public int getMaxItemsPerRow() {
+        return mMaxItemsPerRow;
+    }
+
+    /**
+     * Specifies extra space between two rows, adjacent rows share their line when 0.
+     *
+     * @attr ref R.styleable#PinView_rowSpacing
+     * @see #getRowSpacing()
+     */
+    public void setRowSpacing(@Px int rowSpacing) {
+        mRowSpacing = rowSpacing;
+        invalidateItemGeometry();
+        requestLayout();
+    }
+
+    /**
+     * @return Returns the spacing between two rows.
+     * @see #setRowSpacing(int)
+     */
+    @Px
+    public int getRowSpacing() {
+        return mRowSpacing;
+    }
+
+    /**
+     * Splits every row of items in groups, e.g. 3, 3 for "123-456". The last size repeats until
+     * the end of the row, the groups are separated by the separator.
+     *
+     * @param groups the sizes of the groups, none to remove the groups
+     * @attr ref R.styleable#PinView_itemGroups
+     * @see #setSeparatorWidth(int)
+     * @see #setSeparatorDrawable(Drawable)
+     */
+    public void setItemGroups(int... groups) {
+        for (int group : groups) {
+            if (group <= 0) {
+                throw new IllegalArgumentException("The size of a group must be positive");
+            }
+        }
+        mItemGroups = groups.length > 0 ? groups.clone() : null;
+        invalidateItemGeometry();
+        requestLayout();
+    }
+
+    /**
+     * @return Returns the sizes of the groups, or null if the items are not grouped.
+     * @see #setItemGroups(int...)
+     */
+    @Nullable
+    public int[] getItemGroups() {
+        return mItemGroups != null ? mItemGroups.clone() : null;
+    }
+
+    /**
+     * Specifies the space between two groups, taking the place of the item spacing.
+     *
+     * @attr ref R.styleable#PinView_separatorWidth
+     * @see #getSeparatorWidth()
+     */
+    public void setSeparatorWidth(@Px int separatorWidth) {
+        mSeparatorWidth = separatorWidth;
+        invalidateItemGeometry();
+        requestLayout();
+    }
+
+    /**
+     * @return Returns the space between two groups.
+     * @see #setSeparatorWidth(int)
+     */
+    @Px
+    public int getSeparatorWidth() {
+        return mSeparatorWidth;
+    }
+
+    /**
+     * Sets the drawable drawn between two groups, or null to leave the space empty.
+     *
+     * @attr ref R.styleable#PinView_separatorDrawable
+     * @see #getSeparatorDrawable()
+     */
+    public void setSeparatorDrawable(@Nullable Drawable separator) {
+        mSeparatorDrawable = separator;
+        if (separator != null && separator.isStateful()) {
+            separator.setState(getDrawableState());
+        }
+        invalidate();
+    }
+
+    /**
+     * @return Returns the drawable drawn between two groups.
+     * @see #setSeparatorDrawable(Drawable)
+     */
+    @Nullable
+    public Drawable getSeparatorDrawable() {
+        return mSeparatorDrawable;
+    }
+
     /**
      * Sets the height of item.
      *
@@ -835,6 +1987,7 @@ public class PinView extends AppCompatEditText {
     public void setItemHeight(@Px int itemHeight) {
         mPinItemHeight = itemHeight;
         updateCursorHeight();
+        invalidateItemGeometry();
         requestLayout();
     }
 
@@ -855,6 +2008,7 @@ public class PinView extends AppCompatEditText {
     public void setItemWidth(@Px int itemWidth) {
         mPinItemWidth = itemWidth;
         checkItemRadius();
+        invalidateItemGeometry();
         requestLayout();
     }
 
@@ -870,10 +2024,132 @@ public class PinView extends AppCompatEditText {
      * Specifies whether the text animation should be enabled or disabled.
      * By the default, the animation is disabled.
      *
-     * @param enable True to start animation when adding text, false to transition immediately
+     * @param enable True to start animation when adding or deleting text, false to transition
+     *               immediately
+     * @see #setItemAddAnimator(ItemAnimator)
+     * @see #setItemDeleteAnimator(ItemAnimator)
      */
     public void setAnimationEnable(boolean enable) {
         isAnimationEnable = enable;
+        if (!enable) {
+            mItemAnimations.endAll();
+        }
+    }
+
+    /**
+     * Sets the animation of the items receiving text while the animation is enabled,
+     * {@link ItemAnimators#add()} by default.
+     *
+     * @param animator the animator, or null for no animation when adding text
+     * @see #setAnimationEnable(boolean)
+     */
+    public void setItemAddAnimator(@Nullable ItemAnimator animator) {
+        mItemAddAnimator = animator;
+    }
+
+    /**
+     * @return Returns the animation of the items receiving text.
+     * @see #setItemAddAnimator(ItemAnimator)
+     */
+    @Nullable
+    public ItemAnimator getItemAddAnimator() {
+        return mItemAddAnimator;
+    }
+
+    /**
+     * Sets the animation of the items losing their text while the animation is enabled,
+     * {@link ItemAnimators#delete()} by default. The deleted glyph is drawn until it ends.
+     *
+     * @param animator the animator, or null for no animation when deleting text
+     * @see #setAnimationEnable(boolean)
+     */
+    public void setItemDeleteAnimator(@Nullable ItemAnimator animator) {
+        mItemDeleteAnimator = animator;
+    }
+
+    /**
+     * @return Returns the animation of the items losing their text.
+     * @see #setItemDeleteAnimator(ItemAnimator)
+     */
+    @Nullable
+    public ItemAnimator getItemDeleteAnimator() {
+        return mItemDeleteAnimator;
+    }
+
+    /**
+     * Plays an animation on every item, e.g. {@link ItemAnimators#shake(float)} to reject
+     * a code. Nothing is played while the view cannot be seen, it is still played while
+     * another window has the focus, e.g. a dialog showing the error.
+     *
+     * @see #playItemAnimation(int, ItemAnimator)
+     */
+    public void playItemAnimation(ItemAnimator animator) {
+        for (int i = 0; i < mPinItemCount; i++) {
+            playItemAnimation(i, animator);
+        }
+    }
+
+    /**
+     * Plays an animation on an item, replacing the animation it is running if any.
+     * Nothing is played while the view cannot be seen.
+     *
+     * @param index the index of the item
+     */
+    public void playItemAnimation(int index, ItemAnimator animator) {
+        if (index < 0 || index >= mPinItemCount) {
+            throw new IndexOutOfBoundsException("index: " + index + ", item count: " + mPinItemCount);
+        }
+        if (isVisible) {
+            mItemAnimations.start(index, animator, ItemAnimationEngine.NO_GLYPH);
+        }
+    }
+
+    /**
+     * Shakes the items, to reject a code.
+     *
+     * @see ItemAnimators#shake(float)
+     */
+    public void playErrorAnimation() {
+        playItemAnimation(ItemAnimators.shake(Math.max(mPinItemSpacing, dpToPx(8)) / 2f));
+    }
+
+    /**
+     * Pulses the glyphs one after the other, to accept a code.
+     *
+     * @see ItemAnimators#success()
+     */
+    public void playSuccessAnimation() {
+        playItemAnimation(ItemAnimators.success());
+    }
+
+    /**
+     * Jumps all the running item animations to their end.
+     */
+    public void endItemAnimations() {
+        mItemAnimations.endAll();
+    }
+
+    /**
+     * Specifies whether the digits, the password circle and the mask glyphs are pre-rendered
+     * into a bitmap and drawn from it instead of being rasterized as text for every item.
+     * The bitmap is rebuilt when the typeface, the text size or the text color changes.
+     * By the default, the glyph atlas is disabled.
+     *
+     * @param enabled true to draw the glyphs from the atlas
+     */
+    public void setGlyphAtlasEnabled(boolean enabled) {
+        if (enabled != (mGlyphAtlas != null)) {
+            mGlyphAtlas = enabled ? new GlyphAtlas(mGlyphBoundsCache) : null;
+            invalidate();
+        }
+    }
+
+    /**
+     * @return true if the glyphs are drawn from the glyph atlas
+     * @see #setGlyphAtlasEnabled(boolean)
+     */
+    public boolean isGlyphAtlasEnabled() {
+        return mGlyphAtlas != null;
     }
 
     /**
@@ -886,17 +2162,50 @@ public class PinView extends AppCompatEditText {
      */
     public void setHideLineWhenFilled(boolean hideLineWhenFilled) {
         this.mHideLineWhenFilled = hideLineWhenFilled;
+        invalidate();
+    }
+
+    /**
+     * Registers a callback to be invoked after every frame drawn by this view with the
+     * cost of that frame. Pass null to stop the instrumentation, which is the default.
+     * <p>
+     * The callback runs inside {@link #onDraw(Canvas)}, it must not invalidate the view.
+     *
+     * @param listener The callback that will run, or null
+     */
+    public void setRenderMetricsListener(@Nullable RenderMetricsListener listener) {
+        mRenderMetricsListener = listener;
+        updateMeasuring();
+    }
+
+    /**
+     * Specifies whether the debug overlay should be drawn on top of the items: the anchor lines
+     * of every item, for seeing the font position, and the {@link RenderMetrics} of the frame.
+     * By the default, the overlay is disabled.
+     *
+     * @param enabled True to draw the debug overlay
+     */
+    public void setDebugOverlayEnabled(boolean enabled) {
+        if (isDebugOverlayEnabled != enabled) {
+            isDebugOverlayEnabled = enabled;
+            updateMeasuring();
+            invalidate();
+        }
     }
 
     @Override
     public void setTextSize(float size) {
         super.setTextSize(size);
+        mGlyphBoundsCache.clear();
+        updateTextPaints();
         updateCursorHeight();
     }
 
     @Override
     public void setTextSize(int unit, float size) {
         super.setTextSize(unit, size);
+        mGlyphBoundsCache.clear();
+        updateTextPaints();
         updateCursorHeight();
     }
 
@@ -926,6 +2235,8 @@ public class PinView extends AppCompatEditText {
         if (mItemBackground instanceof ColorDrawable) {
             ((ColorDrawable) mItemBackground.mutate()).setColor(color);
             mItemBackgroundResource = 0;
+            invalidateItemBackgrounds();
+            invalidate();
         } else {
             setItemBackground(new ColorDrawable(color));
         }
@@ -940,8 +2251,82 @@ public class PinView extends AppCompatEditText {
     public void setItemBackground(Drawable background) {
         mItemBackgroundResource = 0;
         mItemBackground = background;
+        invalidateItemBackgrounds();
         invalidate();
     }
+
+    /**
+     * Specifies whether complex item backgrounds, like vectors, gradients with strokes or layers,
+     * are rasterized once per item shape and drawable state, then drawn as bitmaps.
+     * By the default, the cache is disabled.
+     *
+     * @param enabled true to draw the item background from the cache
+     * @see #setItemBackgroundCacheSize(int)
+     */
+    public void setItemBackgroundCacheEnabled(boolean enabled) {
+        if (isItemBackgroundCacheEnabled != enabled) {
+            isItemBackgroundCacheEnabled = enabled;
+            if (enabled) {
+                registerTrimCallbacks(getContext());
+            }
+            invalidateItemPictures();
+            invalidate();
+        }
+    }
+
+    /**
+     * @return true if the item background is drawn from the cache
+     * @see #setItemBackgroundCacheEnabled(boolean)
+     */
+    public boolean isItemBackgroundCacheEnabled() {
+        return isItemBackgroundCacheEnabled;
+    }
+
+    /**
+     * Sets the size in bytes of the rasterized item backgrounds, shared by all the PinViews
+     * of the process. The least recently used ones are evicted first, the default is 4 MiB.
+     *
+     * @param maxBytes the maximum size of the cache, in bytes
+     * @see #setItemBackgroundCacheEnabled(boolean)
+     */
+    public static void setItemBackgroundCacheSize(int maxBytes) {
+        ItemBackgroundCache.setMaxBytes(maxBytes);
+    }
+
+    /**
+     * Evicts all the rasterized item backgrounds. The cache is already trimmed when the
+     * application is hidden or runs low on memory, once any PinView enabled it.
+     *
+     * @see #setItemBackgroundCacheEnabled(boolean)
+     */
+    public static void trimItemBackgroundCache() {
+        ItemBackgroundCache.trim();
+    }
+
+    private static void registerTrimCallbacks(Context context) {
+        if (sTrimCallbacksRegistered) {
+            return;
+        }
+        sTrimCallbacksRegistered = true;
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                // running low, hidden or in the background
+                if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                    ItemBackgroundCache.trim();
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                ItemBackgroundCache.trim();
+            }
+        });
+    }
     //endregion
 
     //region Cursor
@@ -954,6 +2339,7 @@ public class PinView extends AppCompatEditText {
      */
     public void setCursorWidth(@Px int width) {
         mCursorWidth = width;
+        mCursorPaint.setStrokeWidth(width);
         if (isCursorVisible()) {
             invalidateCursor(true);
         }
@@ -978,6 +2364,7 @@ public class PinView extends AppCompatEditText {
      */
     public void setCursorColor(@ColorInt int color) {
         mCursorColor = color;
+        mCursorPaint.setColor(color);
         if (isCursorVisible()) {
             invalidateCursor(true);
         }
@@ -998,7 +2385,7 @@ public class PinView extends AppCompatEditText {
         if (isCursorVisible != visible) {
             isCursorVisible = visible;
             invalidateCursor(isCursorVisible);
-            makeBlink();
+            updateBlink();
         }
     }
 
@@ -1010,65 +2397,138 @@ public class PinView extends AppCompatEditText {
     @Override
     public void onScreenStateChanged(int screenState) {
         super.onScreenStateChanged(screenState);
-        switch (screenState) {
-            case View.SCREEN_STATE_ON:
-                resumeBlink();
-                break;
-            case View.SCREEN_STATE_OFF:
-                suspendBlink();
-                break;
-        }
+        isScreenOn = screenState != View.SCREEN_STATE_OFF;
+        updateActive();
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasWindowFocus) {
+        super.onWindowFocusChanged(hasWindowFocus);
+        isWindowFocused = hasWindowFocus;
+        updateActive();
+    }
+
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        isVisibleAggregated = isVisible;
+        updateActive();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateActive();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateActive();
     }
 
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
-        resumeBlink();
+        isWindowFocused = hasWindowFocus();
+        updateActive();
+        if (mInterruptedCode != null) {
+            final String code = mInterruptedCode;
+            mInterruptedCode = null;
+            verify(code, mVerificationGeneration.get());
+        }
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        suspendBlink();
+        // releases the content layer as well
+        updateActive();
+        // the verification would hold this view, and its context, until it ends
+        final String code = mVerifyingCode;
+        cancelVerification();
+        mInterruptedCode = code;
     }
 
-    private boolean shouldBlink() {
-        return isCursorVisible() && isFocused();
+    /**
+     * @return whether the view and all its ancestors are visible, in a visible window
+     */
+    private boolean isVisibleToUser() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            // also covers the window visibility
+            return isVisibleAggregated;
+        }
+        return getWindowVisibility() == View.VISIBLE && isShown();
     }
 
-    private void makeBlink() {
-        if (shouldBlink()) {
-            if (mBlink == null) {
-                mBlink = new Blink();
+    /**
+     * Leaves or enters the idle state. While idle the cursor does not blink. While hidden
+     * every item animation is ended as well, and the cached bitmaps over
+     * {@link #IDLE_MAX_BITMAP_BYTES}, the recorded item pictures and the content layer are
+     * dropped. Everything is restored lazily by the next frame.
+     */
+    private void updateActive() {
+        final boolean attached = ViewCompat.isAttachedToWindow(this);
+        final boolean visible = attached && isScreenOn && isVisibleToUser();
+        isActive = visible && isWindowFocused;
+        if (isVisible != visible) {
+            isVisible = visible;
+            if (!visible) {
+                mItemAnimations.endAll();
             }
-            removeCallbacks(mBlink);
-            drawCursor = false;
-            postDelayed(mBlink, BLINK);
-        } else {
-            if (mBlink != null) {
-                removeCallbacks(mBlink);
+        }
+        if (!visible && !isMemoryTrimmed) {
+            isMemoryTrimmed = true;
+            if (mGlyphAtlas != null) {
+                mGlyphAtlas.trimMemory(IDLE_MAX_BITMAP_BYTES);
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mContentLayer != null) {
+                mContentLayer.release();
             }
+            releaseItemPictures();
+        } else if (visible && isMemoryTrimmed) {
+            isMemoryTrimmed = false;
+            // the ancestors do not necessarily redraw this view when it is shown again
+            invalidate();
         }
+        updateBlink();
     }
 
-    private void suspendBlink() {
-        if (mBlink != null) {
-            mBlink.cancel();
-            invalidateCursor(false);
-        }
+    private boolean shouldBlink() {
+        return isCursorVisible() && isFocused() && isActive;
     }
 
-    private void resumeBlink() {
-        if (mBlink != null) {
-            mBlink.uncancel();
-            makeBlink();
+    /**
+     * Subscribes to the shared {@link BlinkClock} while the cursor can be seen, and unsubscribes
+     * otherwise. A keystroke only moves the cursor, it keeps the phase of the other cursors.
+     */
+    private void updateBlink() {
+        final boolean blink = shouldBlink();
+        if (isBlinking == blink) {
+            return;
+        }
+        isBlinking = blink;
+        final BlinkClock clock = BlinkClock.getInstance();
+        if (blink) {
+            clock.subscribe(mBlinkListener);
+            invalidateCursor(clock.isCursorVisible());
+        } else {
+            clock.unsubscribe(mBlinkListener);
+            invalidateCursor(false);
         }
     }
 
     private void invalidateCursor(boolean showCursor) {
         if (drawCursor != showCursor) {
             drawCursor = showCursor;
-            invalidate();
+            noteInvalidation(RenderMetrics.INVALIDATION_BLINK);
+            int index = getText().length();
+            if (mItemLefts == null || mItemGeometryDirty) {
+                invalidate();
+            } else if (getItemsBounds(index, index + 1, mDirtyRect)) {
+                // bypass invalidate(int, int, int, int) to keep the content layer
+                super.invalidate(mDirtyRect.left, mDirtyRect.top, mDirtyRect.right, mDirtyRect.bottom);
+            }
         }
     }
 
@@ -1076,35 +2536,6 @@ public class PinView extends AppCompatEditText {
         int delta = 2 * dpToPx(2);
         mCursorHeight = mPinItemHeight - getTextSize() > delta ? getTextSize() + delta : getTextSize();
     }
-
-    private class Blink implements Runnable {
-        private boolean mCancelled;
-
-        @Override
-        public void run() {
-            if (mCancelled) {
-                return;
-            }
-
-            removeCallbacks(this);
-
-            if (shouldBlink()) {
-                invalidateCursor(!drawCursor);
-                postDelayed(this, BLINK);
-            }
-        }
-
-        private void cancel() {
-            if (!mCancelled) {
-                removeCallbacks(this);
-                mCancelled = true;
-            }
-        }
-
-        void uncancel() {
-            mCancelled = false;
-        }
-    }
     //endregion
 
     //region Selection Menu
@@ -1127,10 +2558,227 @@ public class PinView extends AppCompatEditText {
     }
     //endregion
 
+    /**
+     * @return the number of glyphs measured so far, for the tests of the draw budget
+     */
+    int getTextMeasureCount() {
+        return mGlyphBoundsCache.getMeasureCount();
+    }
+
+    /**
+     * @return the number of item animations started so far, for the tests of the bulk entry
+     */
+    int getItemAnimationStartCount() {
+        return mItemAnimations.getStartCount();
+    }
+
     private int dpToPx(float dp) {
         return (int) (dp * getResources().getDisplayMetrics().density + 0.5f);
     }
 
+    /**
+     * Interface definition for a callback to be invoked when the code of a PinView is completed.
+     *
+     * @see #setOnPinCompleteListener(OnPinCompleteListener)
+     */
+    public interface OnPinCompleteListener {
+
+        /**
+         * Called on the main thread, once per completed code.
+         *
+         * @param view The view whose code was completed
+         * @param code The completed code
+         */
+        @MainThread
+        void onPinComplete(PinView view, String code);
+    }
+
+    /**
+     * Verifies a completed code, e.g. by hashing it or by deriving a key from it.
+     *
+     * @see #setPinVerifier(Executor, PinVerifier, OnPinVerifiedListener)
+     */
+    public interface PinVerifier {
+
+        /**
+         * Called on the executor given with the verifier. The thread is interrupted when the
+         * code is edited in the meantime and the executor is an {@link ExecutorService}.
+         *
+         * @param code The completed code
+         * @return true if the code is the right one
+         * @throws Exception if the code could not be verified
+         */
+        @WorkerThread
+        boolean verify(String code) throws Exception;
+    }
+
+    /**
+     * Interface definition for a callback to be invoked with the result of a verification.
+     *
+     * @see #setPinVerifier(Executor, PinVerifier, OnPinVerifiedListener)
+     */
+    public interface OnPinVerifiedListener {
+
+        /**
+         * Called on the main thread, only if the code was not edited during its verification.
+         *
+         * @param view     The view whose code was verified
+         * @param code     The verified code
+         * @param verified The result of the verifier, false if it failed
+         * @param error    The exception thrown by the verifier, or null
+         */
+        @MainThread
+        void onPinVerified(PinView view, String code, boolean verified, @Nullable Exception error);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked after every frame drawn by a PinView.
+     *
+     * @see #setRenderMetricsListener(RenderMetricsListener)
+     */
+    public interface RenderMetricsListener {
+        /**
+         * Called after a frame has been drawn.
+         *
+         * @param view    The view that was drawn
+         * @param metrics The cost of the frame, only valid during this call as it is reused
+         *                for the next frames
+         */
+        void onRenderMetrics(PinView view, RenderMetrics metrics);
+    }
+
+    /**
+     * The cost of a frame drawn by a PinView.
+     */
+    public static final class RenderMetrics {
+        /**
+         * The text was changed.
+         */
+        public static final int INVALIDATION_TEXT = 1;
+        /**
+         * The cursor blinked.
+         */
+        public static final int INVALIDATION_BLINK = 1 << 1;
+        /**
+         * The text animation made progress.
+         */
+        public static final int INVALIDATION_ANIMATION = 1 << 2;
+        /**
+         * The state (focus, drawable state, colors, attributes...) of the view changed.
+         */
+        public static final int INVALIDATION_STATE = 1 << 3;
+
+        long drawNanos;
+        int cellsDrawn;
+        int pathRebuilds;
+        int clipOperations;
+        int textMeasurements;
+        int invalidationReasons;
+
+        RenderMetrics() {
+        }
+
+        /**
+         * @return the time spent drawing the frame, in nanoseconds
+         */
+        public long getDrawNanos() {
+            return drawNanos;
+        }
+
+        /**
+         * @return the number of items actually drawn, the others were outside the clip
+         * or replayed from the retained content
+         */
+        public int getCellsDrawn() {
+            return cellsDrawn;
+        }
+
+        /**
+         * @return the number of item border paths rebuilt
+         */
+        public int getPathRebuilds() {
+            return pathRebuilds;
+        }
+
+        /**
+         * @return the number of clip operations
+         */
+        public int getClipOperations() {
+            return clipOperations;
+        }
+
+        /**
+         * @return the number of glyphs measured
+         */
+        public int getTextMeasurements() {
+            return textMeasurements;
+        }
+
+        /**
+         * @return why the view was redrawn, a combination of the INVALIDATION_ flags
+         */
+        public int getInvalidationReasons() {
+            return invalidationReasons;
+        }
+    }
+
+    /**
+     * Verifies a code on the executor and delivers its result on the main thread. The view and
+     * the verifier are only held weakly, a queued verification does not keep a detached view,
+     * and its context, alive. A running one only holds the verifier until it returns.
+     */
+    private static final class Verification implements Runnable {
+
+        private final WeakReference<PinView> mView;
+        private final WeakReference<PinVerifier> mVerifier;
+        private final AtomicInteger mGenerations;
+        private final int mGeneration;
+        private final String mCode;
+
+        Verification(PinView view, String code, int generation) {
+            mView = new WeakReference<>(view);
+            // held by the view while it is reachable
+            mVerifier = new WeakReference<>(view.mPinVerifier);
+            mGenerations = view.mVerificationGeneration;
+            mGeneration = generation;
+            mCode = code;
+        }
+
+        private boolean isStale() {
+            return mGeneration != mGenerations.get();
+        }
+
+        @Override
+        @WorkerThread
+        public void run() {
+            final PinVerifier verifier = mVerifier.get();
+            if (verifier == null || isStale()) {
+                return;
+            }
+            boolean verified = false;
+            Exception error = null;
+            try {
+                verified = verifier.verify(mCode);
+            } catch (Exception e) {
+                error = e;
+            }
+            if (isStale()) {
+                return;
+            }
+            final boolean result = verified;
+            final Exception failure = error;
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    final PinView view = mView.get();
+                    if (view != null && !isStale()) {
+                        view.onVerified(mCode, result, failure);
+                    }
+                }
+            });
+        }
+    }
+
     private static class DefaultActionModeCallback implements ActionMode.Callback {
 
         @Override
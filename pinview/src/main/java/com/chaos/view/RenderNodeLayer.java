@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.graphics.Canvas;
+import android.graphics.RenderNode;
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+/**
+ * A retained display list, lets PinView replay its content without re-recording it
+ * when only the cursor changes.
+ *
+ * @author Chaos Leong
+ */
+@RequiresApi(Build.VERSION_CODES.Q)
+class RenderNodeLayer {
+
+    private final RenderNode mRenderNode;
+
+    private boolean mDirty = true;
+
+    RenderNodeLayer(String name) {
+        mRenderNode = new RenderNode(name);
+    }
+
+    void invalidate() {
+        mDirty = true;
+    }
+
+    boolean isValid(int width, int height) {
+        return !mDirty && mRenderNode.hasDisplayList()
+                && mRenderNode.getWidth() == width && mRenderNode.getHeight() == height;
+    }
+
+    Canvas beginRecording(int width, int height) {
+        mRenderNode.setPosition(0, 0, width, height);
+        return mRenderNode.beginRecording(width, height);
+    }
+
+    void endRecording() {
+        mRenderNode.endRecording();
+        mDirty = false;
+    }
+
+    void draw(Canvas canvas) {
+        canvas.drawRenderNode(mRenderNode);
+    }
+
+    void release() {
+        mRenderNode.discardDisplayList();
+        mDirty = true;
+    }
+}
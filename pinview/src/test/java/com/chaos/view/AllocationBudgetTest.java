@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.view.View;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Makes sure the steady state render and input paths of {@link PinView} do not allocate.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AllocationBudgetTest {
+
+    private static final int WARM_UP = 50;
+    private static final int ITERATIONS = 500;
+
+    // Averaged over the iterations, a single allocated object per call already exceeds these.
+    private static final long FRAME_BUDGET_BYTES = 8;
+    private static final long KEYSTROKE_BUDGET_BYTES = 8;
+
+    private PinView mPinView;
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        context.setTheme(androidx.appcompat.R.style.Theme_AppCompat_Light);
+        mPinView = new PinView(context);
+        mPinView.setItemCount(6);
+        mPinView.setHint("000000");
+        mPinView.setText("123");
+        mPinView.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        mPinView.layout(0, 0, mPinView.getMeasuredWidth(), mPinView.getMeasuredHeight());
+        mCanvas = new NoOpCanvas();
+    }
+
+    @Test
+    public void onDraw_doesNotAllocate() {
+        long bytes = measure(new Runnable() {
+            @Override
+            public void run() {
+                mPinView.onDraw(mCanvas);
+            }
+        });
+        assertTrue("onDraw allocated " + bytes + " bytes per frame",
+                bytes <= FRAME_BUDGET_BYTES);
+    }
+
+    @Test
+    public void onTextChanged_doesNotAllocate() {
+        final CharSequence text = mPinView.getText();
+        long bytes = measure(new Runnable() {
+            @Override
+            public void run() {
+                mPinView.onTextChanged(text, text.length() - 1, 0, 1);
+            }
+        });
+        assertTrue("onTextChanged allocated " + bytes + " bytes per keystroke",
+                bytes <= KEYSTROKE_BUDGET_BYTES);
+    }
+
+    /**
+     * @return the average bytes allocated by the current thread per run
+     */
+    private static long measure(Runnable runnable) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        for (int i = 0; i < WARM_UP; i++) {
+            runnable.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            runnable.run();
+        }
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+        return (after - before) / ITERATIONS;
+    }
+
+    /**
+     * Swallows every draw call, so that only the allocations of PinView itself are counted.
+     */
+    private static class NoOpCanvas extends Canvas {
+
+        @Override
+        public int save() {
+            return 1;
+        }
+
+        @Override
+        public void restore() {
+        }
+
+        @Override
+        public void translate(float dx, float dy) {
+        }
+
+        @Override
+        public boolean getClipBounds(Rect bounds) {
+            bounds.set(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+            return true;
+        }
+
+        @Override
+        public boolean clipPath(Path path) {
+            return true;
+        }
+
+        @Override
+        public void drawPath(Path path, Paint paint) {
+        }
+
+        @Override
+        public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+        }
+
+        @Override
+        public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        }
+
+        @Override
+        public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+        }
+
+        @Override
+        public void drawPicture(Picture picture) {
+        }
+
+        @Override
+        public boolean isHardwareAccelerated() {
+            return false;
+        }
+    }
+}
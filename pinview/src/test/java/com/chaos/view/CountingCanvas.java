@@ -0,0 +1,227 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A Canvas which draws nothing and only counts the operations issued by a frame.
+ * <p>
+ * Paint mutations are not observable from a Canvas, they are counted as the changes of the
+ * paint state (color, style, stroke width and text size) seen between two draw calls that
+ * use the same Paint.
+ */
+class CountingCanvas extends Canvas {
+
+    int saves;
+    int restores;
+    int clipPaths;
+    int clipRects;
+    int drawPaths;
+    int drawLines;
+    int drawTexts;
+    int drawCircles;
+    int drawRects;
+    int drawBitmaps;
+    int drawPictures;
+    int paintMutations;
+
+    private final Map<Paint, float[]> mPaintStates = new IdentityHashMap<>();
+    private final Rect mClip;
+
+    CountingCanvas() {
+        this(new Rect(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE));
+    }
+
+    /**
+     * @param clip the clip bounds reported to the view, to simulate a partial invalidation
+     */
+    CountingCanvas(Rect clip) {
+        mClip = new Rect(clip);
+    }
+
+    void reset() {
+        saves = restores = clipPaths = clipRects = 0;
+        drawPaths = drawLines = drawTexts = drawCircles = drawRects = drawBitmaps = drawPictures = 0;
+        paintMutations = 0;
+        mPaintStates.clear();
+    }
+
+    int drawCalls() {
+        return drawPaths + drawLines + drawTexts + drawCircles + drawRects + drawBitmaps + drawPictures;
+    }
+
+    private void use(Paint paint) {
+        float[] state = new float[]{
+                paint.getColor(), paint.getStyle().ordinal(), paint.getStrokeWidth(), paint.getTextSize()};
+        float[] last = mPaintStates.put(paint, state);
+        if (last != null) {
+            for (int i = 0; i < state.length; i++) {
+                if (last[i] != state[i]) {
+                    paintMutations++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int save() {
+        return ++saves;
+    }
+
+    @Override
+    public void restore() {
+        restores++;
+    }
+
+    @Override
+    public void restoreToCount(int saveCount) {
+        restores++;
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+    }
+
+    @Override
+    public void scale(float sx, float sy) {
+    }
+
+    @Override
+    public boolean getClipBounds(Rect bounds) {
+        bounds.set(mClip);
+        return !mClip.isEmpty();
+    }
+
+    @Override
+    public boolean clipPath(Path path) {
+        clipPaths++;
+        return true;
+    }
+
+    @Override
+    public boolean clipRect(float left, float top, float right, float bottom) {
+        clipRects++;
+        return true;
+    }
+
+    @Override
+    public boolean clipRect(Rect rect) {
+        clipRects++;
+        return true;
+    }
+
+    @Override
+    public void drawPath(Path path, Paint paint) {
+        use(paint);
+        drawPaths++;
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+        use(paint);
+        drawLines++;
+    }
+
+    @Override
+    public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+        use(paint);
+        drawTexts++;
+    }
+
+    @Override
+    public void drawText(CharSequence text, int start, int end, float x, float y, Paint paint) {
+        use(paint);
+        drawTexts++;
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        use(paint);
+        drawCircles++;
+    }
+
+    @Override
+    public void drawRect(RectF rect, Paint paint) {
+        use(paint);
+        drawRects++;
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        use(paint);
+        drawRects++;
+    }
+
+    @Override
+    public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+        use(paint);
+        drawRects++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+        drawBitmaps++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+        drawBitmaps++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        drawBitmaps++;
+    }
+
+    @Override
+    public void drawPicture(Picture picture) {
+        drawPictures++;
+    }
+
+    @Override
+    public boolean isHardwareAccelerated() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "CountingCanvas{"
+                + "saves=" + saves
+                + ", restores=" + restores
+                + ", clipPaths=" + clipPaths
+                + ", clipRects=" + clipRects
+                + ", drawPaths=" + drawPaths
+                + ", drawLines=" + drawLines
+                + ", drawTexts=" + drawTexts
+                + ", drawCircles=" + drawCircles
+                + ", drawRects=" + drawRects
+                + ", drawBitmaps=" + drawBitmaps
+                + ", drawPictures=" + drawPictures
+                + ", paintMutations=" + paintMutations
+                + '}';
+    }
+}
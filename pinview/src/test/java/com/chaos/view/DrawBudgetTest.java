@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the canvas operations of one steady state frame of {@link PinView} for every view type
+ * and state, and checks them against a budget.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DrawBudgetTest {
+
+    private static final int ITEM_COUNT = 6;
+
+    enum State {
+        EMPTY, PARTIAL, FULL, FOCUSED, PASSWORD_HIDDEN
+    }
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0}, {1}")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (String viewType : new String[]{"rectangle", "line", "none"}) {
+            for (State state : State.values()) {
+                parameters.add(new Object[]{viewType, state});
+            }
+        }
+        return parameters;
+    }
+
+    private final String mViewType;
+    private final State mState;
+
+    private PinView mPinView;
+    private CountingCanvas mCanvas;
+
+    public DrawBudgetTest(String viewType, State state) {
+        mViewType = viewType;
+        mState = state;
+    }
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        context.setTheme(androidx.appcompat.R.style.Theme_AppCompat_Light);
+        AttributeSet attrs = Robolectric.buildAttributeSet()
+                .addAttribute(R.attr.viewType, mViewType)
+                .build();
+        mPinView = new PinView(context, attrs);
+        mPinView.setItemCount(ITEM_COUNT);
+        mPinView.setHint("000000");
+
+        switch (mState) {
+            case EMPTY:
+                break;
+            case PARTIAL:
+                mPinView.setText("123");
+                break;
+            case FULL:
+                mPinView.setText("123456");
+                break;
+            case FOCUSED:
+                mPinView.setText("123");
+                mPinView.requestFocus();
+                // a detached view is not always focusable, the budget would not test anything
+                assertTrue("the view did not take the focus", mPinView.isFocused());
+                break;
+            case PASSWORD_HIDDEN:
+                mPinView.setText("123");
+                mPinView.setPasswordHidden(true);
+                break;
+        }
+
+        mPinView.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        mPinView.layout(0, 0, mPinView.getMeasuredWidth(), mPinView.getMeasuredHeight());
+    }
+
+    @Test
+    public void steadyStateFrame_staysWithinBudget() {
+        CountingCanvas canvas = mCanvas = new CountingCanvas();
+        // the first frame builds the geometry and warms the caches
+        mPinView.onDraw(canvas);
+        canvas.reset();
+
+        int measures = mPinView.getTextMeasureCount();
+        mPinView.onDraw(canvas);
+
+        final int n = ITEM_COUNT;
+        final int filled = mPinView.getText().length();
+        final boolean rectangle = "rectangle".equals(mViewType);
+        final boolean line = "line".equals(mViewType);
+
+        assertEquals("unbalanced save/restore " + canvas, canvas.saves, canvas.restores);
+        assertEquals("text measured in a steady state frame",
+                measures, mPinView.getTextMeasureCount());
+
+        // only the frame itself, items without a background are never clipped
+        assertAtMost("saves", canvas.saves, 1);
+        assertAtMost("clipPaths", canvas.clipPaths, 0);
+        // the recorded chrome of every item
+        assertAtMost("drawPictures", canvas.drawPictures, n);
+        // the batched borders, plus the highlighted item on its own
+        assertAtMost("drawPaths", canvas.drawPaths,
+                rectangle || line ? (mState == State.FOCUSED ? 2 : 1) : 0);
+        // the text of the filled items and the hint of the others
+        assertAtMost("drawTexts", canvas.drawTexts, n);
+        assertAtMost("drawCircles", canvas.drawCircles,
+                mState == State.PASSWORD_HIDDEN ? filled : 0);
+        assertAtMost("drawLines", canvas.drawLines, mState == State.FOCUSED ? 1 : 0);
+        assertAtMost("drawCalls", canvas.drawCalls(), 2 * n + 2);
+        // every role has its own pre-configured paint
+        assertAtMost("paintMutations", canvas.paintMutations, 0);
+    }
+
+    private void assertAtMost(String what, int actual, int budget) {
+        assertTrue(mViewType + "/" + mState + ": " + what + " over budget, "
+                + actual + " > " + budget + ", " + mCanvas, actual <= budget);
+    }
+}
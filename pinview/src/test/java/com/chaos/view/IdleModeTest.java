@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Counts the blink callbacks scheduled by a focused {@link PinView} while it is shown and
+ * while it cannot be seen.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class IdleModeTest {
+
+    private static final Duration IDLE_TIME = Duration.ofSeconds(5);
+
+    private ActivityController<Activity> mController;
+    private PinView mPinView;
+    private BlinkClock mClock;
+
+    @Before
+    public void setUp() {
+        mController = Robolectric.buildActivity(Activity.class).setup();
+        Activity activity = mController.get();
+        activity.setTheme(androidx.appcompat.R.style.Theme_AppCompat_Light);
+        mPinView = new PinView(activity);
+        mPinView.setItemCount(6);
+        activity.setContentView(mPinView);
+        activity.getWindow().getDecorView().dispatchWindowFocusChanged(true);
+        mPinView.requestFocus();
+        idle();
+        mClock = BlinkClock.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        mController.pause().stop().destroy();
+    }
+
+    @Test
+    public void shown_blinks() {
+        int scheduled = mClock.getScheduleCount();
+        idle();
+        assertEquals(1, mClock.getListenerCount());
+        assertTrue("no blink while shown", mClock.getScheduleCount() > scheduled);
+    }
+
+    @Test
+    public void hidden_schedulesNoCallbacks() {
+        mPinView.setVisibility(View.INVISIBLE);
+        assertIdle();
+    }
+
+    @Test
+    public void windowWithoutFocus_schedulesNoCallbacks() {
+        mPinView.getRootView().dispatchWindowFocusChanged(false);
+        assertIdle();
+    }
+
+    @Test
+    public void shownAgain_resumesBlink() {
+        mPinView.setVisibility(View.INVISIBLE);
+        idle();
+        mPinView.setVisibility(View.VISIBLE);
+        int scheduled = mClock.getScheduleCount();
+        idle();
+        assertTrue("no blink after being shown again", mClock.getScheduleCount() > scheduled);
+    }
+
+    private void assertIdle() {
+        idle();
+        int scheduled = mClock.getScheduleCount();
+        idle();
+        assertEquals(0, mClock.getListenerCount());
+        assertEquals("callbacks scheduled while idle", scheduled, mClock.getScheduleCount());
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idleFor(IDLE_TIME);
+    }
+}
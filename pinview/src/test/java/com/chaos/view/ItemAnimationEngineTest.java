@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Runs several concurrent item animations and checks they share a single frame callback
+ * and only redraw the animated items.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ItemAnimationEngineTest {
+
+    private static final int ITEM_COUNT = 6;
+    private static final int ANIMATED_COUNT = 4;
+
+    private ItemAnimationEngine mEngine;
+    private int[] mFrames;
+    private int mChanges;
+    private float mMaxReach;
+
+    @Before
+    public void setUp() {
+        mFrames = new int[ITEM_COUNT];
+        mEngine = new ItemAnimationEngine(new ItemAnimationEngine.Host() {
+            @Override
+            public void onItemAnimationFrame(int index, float reach) {
+                mFrames[index]++;
+                mMaxReach = Math.max(mMaxReach, reach);
+            }
+
+            @Override
+            public void onItemAnimationsChanged() {
+                mChanges++;
+            }
+        });
+    }
+
+    @Test
+    public void concurrentAnimations_shareOneFrameCallback() {
+        mEngine.start(0, ItemAnimators.add(), ItemAnimationEngine.NO_GLYPH);
+        idle();
+        final int single = mEngine.getScheduleCount();
+        mChanges = 0;
+        mFrames = new int[ITEM_COUNT];
+
+        for (int i = 0; i < ANIMATED_COUNT; i++) {
+            mEngine.start(i, ItemAnimators.add(), ItemAnimationEngine.NO_GLYPH);
+        }
+        idle();
+
+        // as many callbacks for all the items as for a single one
+        assertTrue("callbacks per item, " + (mEngine.getScheduleCount() - single) + " > " + single,
+                mEngine.getScheduleCount() - single <= single + 1);
+        for (int i = 0; i < ANIMATED_COUNT; i++) {
+            assertFalse("item " + i + " still animated", mEngine.isAnimating(i));
+            assertTrue("item " + i + " not redrawn", mFrames[i] > 1);
+        }
+        for (int i = ANIMATED_COUNT; i < ITEM_COUNT; i++) {
+            assertEquals("redrew item " + i + " which was not animated", 0, mFrames[i]);
+        }
+        assertEquals(2 * ANIMATED_COUNT, mChanges);
+    }
+
+    @Test
+    public void shake_movesTheItemAndEndsInPlace() {
+        mEngine.start(0, ItemAnimators.shake(10), ItemAnimationEngine.NO_GLYPH);
+        idle();
+        assertFalse(mEngine.isAnimating(0));
+        assertTrue("the item never moved", mMaxReach > 0 && mMaxReach <= 10);
+        assertEquals(0, mEngine.getTranslationX(0), 0);
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(1));
+    }
+}
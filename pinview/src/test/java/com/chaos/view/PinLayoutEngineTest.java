@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the constant time visible range of {@link PinLayoutEngine} against a linear scan of
+ * the item rects, for a single row, for wrapped rows and for grouped items.
+ */
+public class PinLayoutEngineTest {
+
+    private static final int ITEM_COUNT = 256;
+    private static final int OUTSET = 2;
+
+    @Test
+    public void visibleRange_matchesItemRects() {
+        for (int spacing : new int[]{0, 10}) {
+            PinLayoutEngine engine = new PinLayoutEngine();
+            engine.configure(PinLayoutEngine.VIEW_TYPE_RECTANGLE, ITEM_COUNT, 48, 48, 0, spacing, 2);
+            engine.layout(16, 0);
+
+            int[] range = new int[2];
+            for (int left = -100; left < 256 * 58; left += 37) {
+                int right = left + 300;
+                engine.getVisibleRange(left, -1000, right, 1000, OUTSET, range);
+
+                int first = -1;
+                int end = -1;
+                for (int i = 0; i < ITEM_COUNT; i++) {
+                    boolean visible = engine.getItemRights()[i] + OUTSET >= left
+                            && engine.getItemLefts()[i] - OUTSET <= right;
+                    if (visible && first < 0) {
+                        first = i;
+                    }
+                    if (visible) {
+                        end = i + 1;
+                    }
+                }
+                if (first < 0) {
+                    assertEquals("empty range at " + left, range[0], range[1]);
+                } else {
+                    assertEquals("first item at " + left, first, range[0]);
+                    assertEquals("end of range at " + left, end, range[1]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void visibleRange_coversWrappedRows() {
+        for (int rowSpacing : new int[]{0, 10}) {
+            PinLayoutEngine engine = new PinLayoutEngine();
+            engine.configure(PinLayoutEngine.VIEW_TYPE_RECTANGLE, ITEM_COUNT, 48, 48, 0, 10, 2);
+            engine.configureRows(8, rowSpacing);
+            engine.layout(16, 16);
+
+            int[] range = new int[2];
+            for (int top = -100; top < 32 * 58; top += 41) {
+                int bottom = top + 200;
+                engine.getVisibleRange(100, top, 300, bottom, OUTSET, range);
+                for (int i = 0; i < ITEM_COUNT; i++) {
+                    boolean visible = engine.getItemRights()[i] + OUTSET >= 100
+                            && engine.getItemLefts()[i] - OUTSET <= 300
+                            && engine.getItemBottoms()[i] + OUTSET >= top
+                            && engine.getItemTops()[i] - OUTSET <= bottom;
+                    if (visible) {
+                        assertTrue("item " + i + " out of the range at " + top,
+                                i >= range[0] && i < range[1]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void visibleRange_matchesGroupedItemRects() {
+        PinLayoutEngine engine = new PinLayoutEngine();
+        engine.configure(PinLayoutEngine.VIEW_TYPE_RECTANGLE, ITEM_COUNT, 48, 48, 0, 10, 2);
+        engine.configureGroups(new int[]{3, 4}, 24);
+        engine.layout(16, 0);
+
+        // 3 + 63 * 4 + 1 items make 65 groups
+        assertEquals(64, engine.getSeparatorCount());
+
+        int[] range = new int[2];
+        for (int left = -100; left < 256 * 72; left += 37) {
+            int right = left + 300;
+            engine.getVisibleRange(left, -1000, right, 1000, OUTSET, range);
+            for (int i = 0; i < ITEM_COUNT; i++) {
+                boolean visible = engine.getItemRights()[i] + OUTSET >= left
+                        && engine.getItemLefts()[i] - OUTSET <= right;
+                assertEquals("item " + i + " at " + left, visible, i >= range[0] && i < range[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that a completed code is notified once, verified on the given executor and that
+ * the result of a stale verification never reaches the listener.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class PinVerificationTest {
+
+    private PinView mPinView;
+    private final List<String> mCompleted = new ArrayList<>();
+    private final List<String> mVerified = new ArrayList<>();
+    private final List<Runnable> mPending = new ArrayList<>();
+    private final List<Thread> mThreads = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        context.setTheme(androidx.appcompat.R.style.Theme_AppCompat_Light);
+        mPinView = new PinView(context);
+        mPinView.setItemCount(4);
+        mPinView.setOnPinCompleteListener(new PinView.OnPinCompleteListener() {
+            @Override
+            public void onPinComplete(PinView view, String code) {
+                mCompleted.add(code);
+            }
+        });
+        mPinView.setPinVerifier(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                // run later, as a background thread would
+                mPending.add(command);
+            }
+        }, new PinView.PinVerifier() {
+            @Override
+            public boolean verify(String code) {
+                mThreads.add(Thread.currentThread());
+                return "1234".equals(code);
+            }
+        }, new PinView.OnPinVerifiedListener() {
+            @Override
+            public void onPinVerified(PinView view, String code, boolean verified, Exception error) {
+                assertSame(Looper.getMainLooper().getThread(), Thread.currentThread());
+                mVerified.add(code + (verified ? ":ok" : ":ko"));
+            }
+        });
+    }
+
+    @Test
+    public void completedCode_notifiedOnce() {
+        mPinView.setText("123");
+        assertTrue(mCompleted.isEmpty());
+
+        mPinView.getText().append("4");
+        mPinView.setCode("1234");
+        assertEquals(1, mCompleted.size());
+
+        mPinView.getText().delete(3, 4);
+        mPinView.getText().append("4");
+        assertEquals(2, mCompleted.size());
+    }
+
+    @Test
+    public void result_deliveredOnTheMainThread() {
+        mPinView.setCode("1234");
+        assertEquals(1, mPending.size());
+        runPending();
+        assertTrue("delivered before the main looper ran", mVerified.isEmpty());
+
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(1, mVerified.size());
+        assertEquals("1234:ok", mVerified.get(0));
+    }
+
+    @Test
+    public void editedCode_discardsStaleResult() {
+        mPinView.setCode("1111");
+        mPinView.getText().delete(3, 4);
+        runPending();
+        shadowOf(Looper.getMainLooper()).idle();
+        // never even started
+        assertTrue(mThreads.isEmpty());
+        assertTrue(mVerified.isEmpty());
+
+        mPinView.setCode("1234");
+        runPending();
+        // edited while the result is on its way to the main thread
+        mPinView.setCode("");
+        shadowOf(Looper.getMainLooper()).idle();
+        assertFalse(mThreads.isEmpty());
+        assertTrue(mVerified.isEmpty());
+    }
+
+    @Test
+    public void sameCodeSetAgain_keepsItsVerification() {
+        mPinView.setCode("1234");
+        // e.g. an input method committing its composing text
+        mPinView.setText("1234");
+        assertEquals(1, mPending.size());
+        assertEquals(1, mCompleted.size());
+
+        runPending();
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(1, mVerified.size());
+        assertEquals("1234:ok", mVerified.get(0));
+    }
+
+    @Test
+    public void pendingVerification_doesNotHoldTheView() {
+        final WeakReference<PinView> view = new WeakReference<>(mPinView);
+        mPinView.setCode("1234");
+        assertEquals(1, mPending.size());
+        // as after a detach, nothing else holds the view
+        mPinView = null;
+
+        for (int i = 0; i < 10 && view.get() != null; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        assertNull("the pending verification holds the view", view.get());
+
+        runPending();
+        shadowOf(Looper.getMainLooper()).idle();
+        assertTrue(mVerified.isEmpty());
+    }
+
+    private void runPending() {
+        for (Runnable runnable : new ArrayList<>(mPending)) {
+            runnable.run();
+        }
+        mPending.clear();
+    }
+}
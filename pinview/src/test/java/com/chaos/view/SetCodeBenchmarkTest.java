@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 Chaos Leong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.chaos.view;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.InputFilter;
+import android.text.TextWatcher;
+import android.view.View;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Compares the work done, counted in text watcher calls, invalidations and animations
+ * started, to enter a whole code with {@link PinView#setCode(CharSequence)}, with
+ * {@link PinView#setText(CharSequence)} and by typing it one character after the other.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class SetCodeBenchmarkTest {
+
+    private static final String CODE = "123456";
+
+    private PinView mPinView;
+    private int mWatcherCalls;
+    private int mInvalidations;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        context.setTheme(androidx.appcompat.R.style.Theme_AppCompat_Light);
+        mPinView = new PinView(context) {
+            @Override
+            public void invalidate() {
+                mInvalidations++;
+                super.invalidate();
+            }
+
+            @Override
+            public void invalidate(Rect dirty) {
+                mInvalidations++;
+                super.invalidate(dirty);
+            }
+
+            @Override
+            public void invalidate(int l, int t, int r, int b) {
+                mInvalidations++;
+                super.invalidate(l, t, r, b);
+            }
+        };
+        mPinView.setItemCount(CODE.length());
+        mPinView.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        mPinView.layout(0, 0, mPinView.getMeasuredWidth(), mPinView.getMeasuredHeight());
+        mPinView.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mWatcherCalls++;
+            }
+        });
+    }
+
+    @Test
+    public void setCode_callsTheWatchersOnce() {
+        mPinView.setCode(CODE);
+        assertEquals(CODE, mPinView.getText().toString());
+        assertEquals(CODE.length(), mPinView.getSelectionStart());
+        assertEquals(1, mWatcherCalls);
+
+        // nothing changed
+        mPinView.setCode(CODE);
+        assertEquals(1, mWatcherCalls);
+
+        mPinView.setCode(null);
+        assertEquals(0, mPinView.getText().length());
+        assertEquals(2, mWatcherCalls);
+    }
+
+    @Test
+    public void setCode_truncatesToTheItemCount() {
+        mPinView.setCode(CODE + "789");
+        assertEquals(CODE, mPinView.getText().toString());
+    }
+
+    @Test
+    public void setCode_runsTheInputFilters() {
+        // replaces the length filter, the code is still truncated
+        mPinView.setFilters(new InputFilter[]{new InputFilter.AllCaps()});
+        mPinView.setCode("ab12cdef");
+        assertEquals("AB12CD", mPinView.getText().toString());
+    }
+
+    @Test
+    public void setCode_doesLessWorkThanSetTextAndTyping() {
+        ActivityController<Activity> controller =
+                Robolectric.buildActivity(Activity.class).setup();
+        // visible, so that the added items are animated
+        controller.get().setContentView(mPinView);
+        mPinView.setAnimationEnable(true);
+        idle();
+
+        final Editable editable = mPinView.getText();
+        final Work setCode = new Work();
+        mPinView.setCode(CODE);
+        setCode.end();
+        // replaced in place
+        assertSame(editable, mPinView.getText());
+
+        clear();
+        final Work setText = new Work();
+        mPinView.setText(CODE);
+        setText.end();
+        // a whole new editable
+        assertNotSame(editable, mPinView.getText());
+
+        clear();
+        final Work typing = new Work();
+        Editable text = mPinView.getText();
+        for (int i = 0; i < CODE.length(); i++) {
+            text.append(CODE.charAt(i));
+        }
+        typing.end();
+        controller.pause().stop().destroy();
+
+        // counted rather than timed, the work done does not depend on the machine
+        assertEquals(1, setCode.watcherCalls);
+        assertEquals(1, setText.watcherCalls);
+        assertEquals(CODE.length(), typing.watcherCalls);
+        assertEquals("animations started by setCode", 0, setCode.animations);
+        assertEquals(CODE.length(), setText.animations);
+        assertEquals(CODE.length(), typing.animations);
+        assertTrue("setCode invalidated " + setCode + ", setText " + setText,
+                setCode.invalidations < setText.invalidations);
+        assertTrue("setCode invalidated " + setCode + ", typing " + typing,
+                setCode.invalidations < typing.invalidations);
+    }
+
+    private void clear() {
+        mPinView.getText().clear();
+        idle();
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(1));
+    }
+
+    /**
+     * The work done since it was created, until {@link #end()}.
+     */
+    private final class Work {
+
+        private int watcherCalls = -mWatcherCalls;
+        private int invalidations = -mInvalidations;
+        private int animations = -mPinView.getItemAnimationStartCount();
+
+        void end() {
+            watcherCalls += mWatcherCalls;
+            invalidations += mInvalidations;
+            animations += mPinView.getItemAnimationStartCount();
+        }
+
+        @Override
+        public String toString() {
+            return invalidations + " times";
+        }
+    }
+}